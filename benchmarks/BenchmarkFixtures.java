@@ -0,0 +1,64 @@
+// Shaolong Xu 1067946
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.RemoteException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Shared set-up for the benchmark drivers: throwaway data directories, players and a client that ignores every call.
+ */
+final class BenchmarkFixtures {
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Creates a temporary data directory that is deleted when the benchmark JVM exits.
+     */
+    static Path tempDirectory() throws IOException {
+        Path directory = Files.createTempDirectory("tictactoe-bench");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> delete(directory)));
+        return directory;
+    }
+
+    /**
+     * Creates a stored, ranked player with zero points.
+     */
+    static Player player(PlayerStore store, RankIndex ranks, String username, ClientInterface client) {
+        ranks.add(0);
+        return new Player(username, client, store.create(username), ranks);
+    }
+
+    /**
+     * Stops the server's progress logging from dominating the measurements.
+     */
+    static void silenceStdout() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    private static void delete(Path directory) {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("Failed to delete " + directory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * A client that accepts every callback and does nothing with it.
+     */
+    static final class StubClient implements ClientInterface {
+        @Override public void applyUpdate(GameUpdate update) throws RemoteException { }
+        @Override public void freeze() throws RemoteException { }
+        @Override public void receiveChatMessage(int index, String message) throws RemoteException { }
+        @Override public void receiveChatHistory(List<String> messages, int nextIndex) throws RemoteException { }
+        @Override public void heartbeat() throws RemoteException { }
+        @Override public GameId getGameId() throws RemoteException { return null; }
+        @Override public String getUsername() throws RemoteException { return null; }
+    }
+}
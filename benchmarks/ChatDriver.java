@@ -0,0 +1,22 @@
+// Shaolong Xu 1067946
+
+/**
+ * Drives the chat history of a {@link GameSession} for {@code jmh.ChatBenchmark}.
+ */
+public class ChatDriver implements jmh.ChatBenchmark.Driver {
+    private GameSession game;
+
+    @Override
+    public void setUp() throws Exception {
+        RankIndex ranks = new RankIndex();
+        PlayerStore store = PlayerStore.open(BenchmarkFixtures.tempDirectory());
+        game = new GameSession(BenchmarkFixtures.player(store, ranks, "player1", null),
+                BenchmarkFixtures.player(store, ranks, "player2", null));
+    }
+
+    @Override
+    public String addAndJoin(String message) {
+        game.addChatMessage(message);
+        return String.join("\n", game.getChatMessages());
+    }
+}
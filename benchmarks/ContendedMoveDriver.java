@@ -0,0 +1,70 @@
+// Shaolong Xu 1067946
+
+import java.nio.file.Path;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives {@link TicTacToeServer} for {@code jmh.ContendedMoveBenchmark}.
+ */
+public class ContendedMoveDriver implements jmh.ContendedMoveBenchmark.Driver {
+    private final AtomicInteger tableCount = new AtomicInteger();
+    private PlayerStore store;
+    private GameJournal journal;
+    private GameArchive archive;
+    private RankIndex ranks;
+    private TicTacToeServer server;
+
+    private static final class Table {
+        final Player player1, player2;
+        GameId gameId;
+        int moves = GameSessionDriver.DRAW_SCRIPT.length;
+
+        Table(Player player1, Player player2) {
+            this.player1 = player1;
+            this.player2 = player2;
+        }
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        BenchmarkFixtures.silenceStdout();
+        Path directory = BenchmarkFixtures.tempDirectory();
+        store = PlayerStore.open(directory);
+        journal = GameJournal.open(directory.resolve("journal"));
+        archive = GameArchive.open(directory.resolve("archive"));
+        ranks = new RankIndex();
+        server = new TicTacToeServer(store, journal, directory.resolve("snapshot.dat"), archive);
+    }
+
+    @Override
+    public Object openTable() {
+        int number = tableCount.getAndIncrement();
+        ClientInterface client = new BenchmarkFixtures.StubClient();
+        return new Table(BenchmarkFixtures.player(store, ranks, "a" + number, client),
+                BenchmarkFixtures.player(store, ranks, "b" + number, client));
+    }
+
+    @Override
+    public void playMove(Object handle) throws Exception {
+        Table table = (Table) handle;
+        if (table.moves == GameSessionDriver.DRAW_SCRIPT.length) {
+            server.startGame(table.player1, table.player2);
+            table.gameId = GameId.of(table.player1.getGameId());
+            table.moves = 0;
+        }
+        // X moves first, and the server only takes a move from the player whose turn it is
+        char symbol = table.moves % 2 == 0 ? 'X' : 'O';
+        Player mover = table.player1.getSymbol() == symbol ? table.player1 : table.player2;
+        int cell = GameSessionDriver.DRAW_SCRIPT[table.moves++];
+        server.makeMove(table.gameId, mover.getUsername(), cell / 3, cell % 3);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        UnicastRemoteObject.unexportObject(server, true);
+        archive.close();
+        journal.close();
+        store.close();
+    }
+}
@@ -0,0 +1,53 @@
+// Shaolong Xu 1067946
+
+/**
+ * Drives {@link GameSession} for {@code jmh.GameSessionBenchmark}.
+ */
+public class GameSessionDriver implements jmh.GameSessionBenchmark.Driver {
+    // Cells of a game that fills the board without either side completing a line
+    static final int[] DRAW_SCRIPT = {0, 1, 2, 4, 3, 5, 7, 6, 8};
+
+    private Player player1, player2;
+    private GameSession fullBoard;
+
+    @Override
+    public void setUp() throws Exception {
+        RankIndex ranks = new RankIndex();
+        PlayerStore store = PlayerStore.open(BenchmarkFixtures.tempDirectory());
+        player1 = BenchmarkFixtures.player(store, ranks, "player1", null);
+        player2 = BenchmarkFixtures.player(store, ranks, "player2", null);
+        player1.setSymbol('X');
+        player2.setSymbol('O');
+
+        fullBoard = new GameSession(player1, player2);
+        play(fullBoard);
+    }
+
+    @Override
+    public int playGame() {
+        GameSession game = new GameSession(player1, player2);
+        play(game);
+        return game.getMoveSeq();
+    }
+
+    @Override
+    public boolean isWinningMove(int row, int col) {
+        return fullBoard.isWinningMove(row, col);
+    }
+
+    @Override
+    public boolean isDraw() {
+        return fullBoard.isDraw();
+    }
+
+    private static void play(GameSession game) {
+        for (int cell : DRAW_SCRIPT) {
+            int row = cell / 3;
+            int col = cell % 3;
+            game.makeMove(row, col, game.getCurrentPlayer().getSymbol());
+            if (game.isWinningMove(row, col)) {
+                throw new IllegalStateException("Scripted draw produced a win");
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+// Shaolong Xu 1067946
+
+import java.util.Random;
+
+/**
+ * Drives {@link RankIndex} for {@code jmh.RankingBenchmark}.
+ */
+public class RankingDriver implements jmh.RankingBenchmark.Driver {
+    private RankIndex ranks;
+    private int[] points;
+    private long state;
+    private boolean win;
+
+    @Override
+    public void setUp(int players, long seed) {
+        Random random = new Random(seed);
+        ranks = new RankIndex();
+        points = new int[players];
+        for (int i = 0; i < players; i++) {
+            points[i] = random.nextInt(2000);
+            ranks.add(points[i]);
+        }
+        state = seed;
+    }
+
+    @Override
+    public int recordResult() {
+        // Xorshift keeps the player choice cheap and repeatable
+        state ^= state << 13;
+        state ^= state >>> 7;
+        state ^= state << 17;
+        int player = (int) ((state >>> 1) % points.length);
+
+        // Alternate wins and losses so the points distribution stays put
+        win = !win;
+        int from = points[player];
+        int to = win ? from + 5 : Math.max(0, from - 5);
+        ranks.move(from, to);
+        points[player] = to;
+        return ranks.rankOf(to);
+    }
+}
@@ -0,0 +1,39 @@
+// Shaolong Xu 1067946
+
+package jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of storing a chat message and joining the retained history into one string,
+ * as a client does when it redraws the chat area.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class ChatBenchmark {
+
+    public interface Driver {
+        void setUp() throws Exception;
+
+        String addAndJoin(String message);
+    }
+
+    private Driver driver;
+
+    @Setup
+    public void setUp() throws Exception {
+        driver = Drivers.load("ChatDriver", Driver.class);
+        driver.setUp();
+    }
+
+    @Benchmark
+    public String addChatMessageAndJoin() {
+        return driver.addAndJoin("player1: good game, well played");
+    }
+}
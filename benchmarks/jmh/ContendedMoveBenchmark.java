@@ -0,0 +1,76 @@
+// Shaolong Xu 1067946
+
+package jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves through {@code TicTacToeServer.makeMove} from many threads at once, each
+ * cycling through its own tables, with clients that ignore every callback.
+ * The figures include the journal's group commit on the temporary directory's
+ * file system and starting a new game after every ninth move.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@Threads(8)
+public class ContendedMoveBenchmark {
+
+    public interface Driver {
+        void setUp() throws Exception;
+
+        /**
+         * @return An opaque handle on a pair of players who play game after game.
+         */
+        Object openTable() throws Exception;
+
+        /**
+         * Makes the next scripted move at the table, starting a new game when the last one has ended.
+         */
+        void playMove(Object table) throws Exception;
+
+        void tearDown() throws Exception;
+    }
+
+    @Param({"4"})
+    public int tablesPerThread;
+
+    private Driver driver;
+
+    @Setup
+    public void setUp() throws Exception {
+        driver = Drivers.load("ContendedMoveDriver", Driver.class);
+        driver.setUp();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        driver.tearDown();
+    }
+
+    @State(Scope.Thread)
+    public static class Tables {
+        Object[] tables;
+        int next;
+
+        @Setup
+        public void setUp(ContendedMoveBenchmark benchmark) throws Exception {
+            tables = new Object[benchmark.tablesPerThread];
+            for (int i = 0; i < tables.length; i++) {
+                tables[i] = benchmark.driver.openTable();
+            }
+        }
+    }
+
+    @Benchmark
+    public void makeMove(Tables tables) throws Exception {
+        Object table = tables.tables[tables.next];
+        tables.next = (tables.next + 1) % tables.tables.length;
+        driver.playMove(table);
+    }
+}
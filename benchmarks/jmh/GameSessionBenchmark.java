@@ -0,0 +1,57 @@
+// Shaolong Xu 1067946
+
+package jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded cost of the board operations every move goes through.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class GameSessionBenchmark {
+
+    public interface Driver {
+        void setUp() throws Exception;
+
+        /**
+         * Plays a scripted nine-move draw on a new session, checking for a win after every move.
+         *
+         * @return The number of moves made.
+         */
+        int playGame();
+
+        boolean isWinningMove(int row, int col);
+
+        boolean isDraw();
+    }
+
+    private Driver driver;
+
+    @Setup
+    public void setUp() throws Exception {
+        driver = Drivers.load("GameSessionDriver", Driver.class);
+        driver.setUp();
+    }
+
+    @Benchmark
+    public int makeMoveFullGame() {
+        return driver.playGame();
+    }
+
+    @Benchmark
+    public boolean isWinningMove() {
+        return driver.isWinningMove(1, 1);
+    }
+
+    @Benchmark
+    public boolean isDraw() {
+        return driver.isDraw();
+    }
+}
@@ -0,0 +1,50 @@
+// Shaolong Xu 1067946
+
+package jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording a game result and reading the new rank, the work that
+ * replaced re-sorting every player after each game.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class RankingBenchmark {
+
+    public interface Driver {
+        /**
+         * Ranks the given number of players with points drawn from a seeded generator.
+         */
+        void setUp(int players, long seed);
+
+        /**
+         * Moves a pseudo-randomly chosen player's points by a win or a loss.
+         *
+         * @return The player's new rank.
+         */
+        int recordResult();
+    }
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int players;
+
+    private Driver driver;
+
+    @Setup
+    public void setUp() {
+        driver = Drivers.load("RankingDriver", Driver.class);
+        driver.setUp(players, 42);
+    }
+
+    @Benchmark
+    public int recordResultAndRank() {
+        return driver.recordResult();
+    }
+}
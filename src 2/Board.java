@@ -0,0 +1,135 @@
+// Shaolong Xu 1067946
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
+
+/**
+ * A board as it travels over RMI: its size, then only the occupied cells as a
+ * cell number and a symbol byte, instead of a serialized {@code char[][]} with two
+ * bytes per cell and a descriptor per row. A board in play is mostly empty, so the
+ * payload grows with the moves made rather than with the board's area.
+ * The server builds boards from the cells a game has played, so sending one never
+ * touches the empty cells; the {@code char[][]} is only built where it is drawn.
+ */
+public final class Board implements Externalizable {
+    private static final long serialVersionUID = 2L;
+
+    private char[][] cells; // Built on first use for a board made from its played cells
+    private int size;
+    private short[] played;
+    private byte[] symbols;
+
+    /**
+     * For deserialization only.
+     */
+    public Board() {
+    }
+
+    public Board(char[][] cells) {
+        this.cells = cells;
+    }
+
+    /**
+     * A square board given by its occupied cells, as a game keeps them.
+     *
+     * @param size    The number of rows and columns.
+     * @param played  The occupied cells, numbered row * size + col.
+     * @param symbols The symbol in each of those cells.
+     */
+    Board(int size, short[] played, byte[] symbols) {
+        this.size = size;
+        this.played = played;
+        this.symbols = symbols;
+    }
+
+    public char[][] getCells() {
+        if (cells == null) {
+            cells = new char[size][size];
+            for (int i = 0; i < played.length; i++) {
+                cells[played[i] / size][played[i] % size] = (char) symbols[i];
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * @return The number of cells holding a symbol.
+     */
+    static int countOccupied(char[][] cells) {
+        int count = 0;
+        for (char[] row : cells) {
+            for (char cell : row) {
+                if (cell != '\0') {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of bytes {@link #write(ByteBuffer)} takes.
+     */
+    int encodedSize() {
+        return 4 + 3 * (played != null ? played.length : countOccupied(cells));
+    }
+
+    /**
+     * Writes the board in the compact form. The same bytes travel over RMI, inside
+     * {@link GameUpdate}, and in {@link WireProtocol} frames.
+     */
+    void write(ByteBuffer out) {
+        if (played != null) {
+            out.put((byte) size).put((byte) size).putShort((short) played.length);
+            for (int i = 0; i < played.length; i++) {
+                out.putShort(played[i]).put(symbols[i]);
+            }
+            return;
+        }
+        int cols = cells[0].length;
+        out.put((byte) cells.length).put((byte) cols).putShort((short) countOccupied(cells));
+        for (int i = 0; i < cells.length; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (cells[i][j] != '\0') {
+                    out.putShort((short) (i * cols + j)).put((byte) cells[i][j]);
+                }
+            }
+        }
+    }
+
+    static Board read(ByteBuffer in) {
+        char[][] cells = new char[in.get() & 0xFF][in.get() & 0xFF];
+        int cols = cells[0].length;
+        for (int count = in.getShort() & 0xFFFF; count > 0; count--) {
+            int cell = in.getShort() & 0xFFFF;
+            cells[cell / cols][cell % cols] = (char) (in.get() & 0xFF);
+        }
+        return new Board(cells);
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize());
+        write(buffer);
+        out.write(buffer.array());
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        // The header gives the number of cells that follow
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        in.readFully(buffer.array());
+        int count = buffer.getShort(2) & 0xFFFF;
+        buffer = ByteBuffer.allocate(4 + 3 * count).put(buffer.array());
+        in.readFully(buffer.array(), 4, 3 * count);
+        buffer.rewind();
+        try {
+            cells = read(buffer).cells;
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed board: " + e, e);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+// Shaolong Xu 1067946
+
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A server-side opponent for players nobody else is paired with. It lives in the
+ * server's JVM and is never exported; the server delivers its updates like any
+ * other client's. It follows the game from those updates and answers each turn from
+ * the {@link PerfectPlay} table after a short pause, on its own scheduler, so it
+ * holds no game or server lock while deciding.
+ */
+public class BotClient implements ClientInterface {
+    public static final String NAME_PREFIX = "Bot ";
+
+    // Long enough for the move to read as a reply rather than an echo
+    private static final long THINK_MILLIS = 600;
+
+    private final String username;
+    private final ServerInterface server;
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<String> onFinished;
+    private GameId gameId;
+    private int xMask, oMask;
+    private int lastSeq; // Move sequence number the masks reflect
+    private int plannedSeq = -1; // Position a move is already scheduled for
+
+    /**
+     * @param server     The server the bot plays on.
+     * @param scheduler  Runs the bot's moves.
+     * @param onFinished Called with the bot's name when its game ends.
+     */
+    public BotClient(String username, ServerInterface server, ScheduledExecutorService scheduler,
+                     Consumer<String> onFinished) {
+        this.username = username;
+        this.server = server;
+        this.scheduler = scheduler;
+        this.onFinished = onFinished;
+    }
+
+    public static boolean isBotName(String username) {
+        return username.startsWith(NAME_PREFIX);
+    }
+
+    @Override
+    public synchronized void applyUpdate(GameUpdate update) {
+        // A new game starts from an empty board
+        if (update.getGameId() != null && !update.getGameId().equals(gameId)) {
+            xMask = 0;
+            oMask = 0;
+            lastSeq = 0;
+            plannedSeq = -1;
+        }
+        gameId = update.getGameId();
+
+        if (update.isSnapshot()) {
+            char[][] board = update.getBoard();
+            xMask = 0;
+            oMask = 0;
+            for (int cell = 0; cell < 9; cell++) {
+                char symbol = board[cell / 3][cell % 3];
+                if (symbol == 'X') {
+                    xMask |= 1 << cell;
+                } else if (symbol == 'O') {
+                    oMask |= 1 << cell;
+                }
+            }
+            lastSeq = update.getSeq();
+        } else if (update.hasMove() && update.getSeq() == lastSeq + 1) {
+            int bit = 1 << (update.getRow() * 3 + update.getCol());
+            if (update.getSymbol() == 'X') {
+                xMask |= bit;
+            } else {
+                oMask |= bit;
+            }
+            lastSeq = update.getSeq();
+        } else if (update.getSeq() > lastSeq && !update.isGameOver()) {
+            // Joined mid-game, as after a restart; fetch the board before playing
+            GameId game = gameId;
+            scheduler.execute(() -> requestSnapshot(game));
+            return;
+        }
+
+        if (update.isGameOver()) {
+            gameId = null;
+            onFinished.accept(username);
+            return;
+        }
+        if (update.isYourTurn() && plannedSeq != lastSeq) {
+            plannedSeq = lastSeq;
+            GameId game = gameId;
+            int seq = lastSeq;
+            scheduler.schedule(() -> play(game, seq), THINK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void play(GameId game, int seq) {
+        int cell;
+        synchronized (this) {
+            if (!game.equals(gameId) || seq != lastSeq) {
+                return;
+            }
+            cell = PerfectPlay.bestMove(xMask, oMask);
+        }
+        if (cell < 0) {
+            return;
+        }
+        try {
+            server.makeMove(game, username, cell / 3, cell % 3);
+        } catch (RemoteException e) {
+            System.err.println(username + " failed to move in game " + game + ": " + e.getMessage());
+        }
+    }
+
+    private void requestSnapshot(GameId game) {
+        try {
+            server.requestSnapshot(game, username);
+        } catch (RemoteException e) {
+            System.err.println(username + " failed to fetch the board of game " + game + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void freeze() {
+        // Nothing to show; the bot simply waits for the next update
+    }
+
+    @Override
+    public void receiveChatMessage(int index, String message) {
+    }
+
+    @Override
+    public void receiveChatHistory(List<String> messages, int nextIndex) {
+    }
+
+    @Override
+    public void heartbeat() {
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public synchronized GameId getGameId() {
+        return gameId;
+    }
+}
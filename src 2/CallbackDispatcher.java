@@ -0,0 +1,136 @@
+// Shaolong Xu 1067946
+
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sends ClientInterface callbacks off the request threads.
+ * Calls for the same client are queued and delivered in order by one pool
+ * thread at a time, so a slow client only delays its own updates. A client that
+ * falls {@link #MAX_PENDING} callbacks behind is reported as failed and gets
+ * nothing more, so its queue cannot grow without bound.
+ */
+public class CallbackDispatcher {
+    // A client this far behind is not taking its callbacks
+    static final int MAX_PENDING = 256;
+
+    public interface Callback {
+        void invoke(ClientInterface client) throws RemoteException;
+    }
+
+    public interface DeliveryListener {
+        void onDelivered(Player player, long roundTripNanos);
+    }
+
+    public interface FailureListener {
+        void onFailure(Player player, ClientInterface client, RemoteException e);
+    }
+
+    private final Map<ClientInterface, Outbox> outboxes = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final DeliveryListener deliveryListener;
+    private final FailureListener failureListener;
+
+    public CallbackDispatcher(int threads, DeliveryListener deliveryListener, FailureListener failureListener) {
+        this.deliveryListener = deliveryListener;
+        this.failureListener = failureListener;
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "callback-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a callback for the player's current client and returns immediately.
+     *
+     * @param player   The player to notify.
+     * @param callback The remote call to make on the player's client.
+     */
+    public void dispatch(Player player, Callback callback) {
+        ClientInterface client = player.getClient();
+        if (client == null) {
+            return;
+        }
+
+        // An outbox retires itself once drained, so retry if we raced with that
+        while (!outboxes.computeIfAbsent(client, c -> new Outbox(player, c)).offer(callback)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private class Outbox implements Runnable {
+        private final Player player;
+        private final ClientInterface client;
+        private final Queue<Callback> pending = new ArrayDeque<>();
+        private boolean scheduled;
+        private boolean retired;
+        private boolean overflowed; // Dropping callbacks until the call in flight returns
+
+        Outbox(Player player, ClientInterface client) {
+            this.player = player;
+            this.client = client;
+        }
+
+        synchronized boolean offer(Callback callback) {
+            if (retired) {
+                return false;
+            }
+            if (overflowed) {
+                return true;
+            }
+            if (pending.size() >= MAX_PENDING) {
+                overflowed = true;
+                pending.clear();
+                // Reported from the pool, since the caller may hold a game's monitor
+                RemoteException e = new RemoteException(player.getUsername() + " is " + MAX_PENDING + " callbacks behind");
+                executor.execute(() -> failureListener.onFailure(player, client, e));
+                return true;
+            }
+            pending.add(callback);
+            if (!scheduled) {
+                scheduled = true;
+                executor.execute(this);
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            Callback next;
+            while ((next = poll()) != null) {
+                try {
+                    long start = System.nanoTime();
+                    next.invoke(client);
+                    deliveryListener.onDelivered(player, System.nanoTime() - start);
+                } catch (RemoteException e) {
+                    retire();
+                    failureListener.onFailure(player, client, e);
+                    return;
+                } catch (RuntimeException e) {
+                    System.err.println("Callback to " + player.getUsername() + " failed: " + e.getMessage());
+                }
+            }
+        }
+
+        private synchronized Callback poll() {
+            Callback next = pending.poll();
+            if (next == null) {
+                retire();
+            }
+            return next;
+        }
+
+        private synchronized void retire() {
+            // Anything still queued would hit the same dead client
+            pending.clear();
+            retired = true;
+            outboxes.remove(client, this);
+        }
+    }
+}
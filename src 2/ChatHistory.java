@@ -0,0 +1,59 @@
+// Shaolong Xu 1067946
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fixed-capacity ring buffer of a game's most recent chat messages.
+ * Every message gets an increasing index so clients can tell where they are in the stream.
+ */
+public class ChatHistory {
+    private final String[] messages;
+    private int nextIndex;
+
+    public ChatHistory(int capacity) {
+        this.messages = new String[capacity];
+    }
+
+    /**
+     * Appends a message, overwriting the oldest one once the buffer is full.
+     *
+     * @param message The message to store.
+     * @return The index assigned to the message.
+     */
+    public int append(String message) {
+        int index = nextIndex++;
+        messages[index % messages.length] = message;
+        return index;
+    }
+
+    /**
+     * @return The retained messages, oldest first.
+     */
+    public List<String> getMessages() {
+        int first = getFirstIndex();
+        List<String> result = new ArrayList<>(nextIndex - first);
+        for (int i = first; i < nextIndex; i++) {
+            result.add(messages[i % messages.length]);
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the contents with messages saved from another history.
+     *
+     * @param firstIndex The index of the first message.
+     * @param saved      The messages, oldest first.
+     */
+    public void restore(int firstIndex, List<String> saved) {
+        Arrays.fill(messages, null);
+        nextIndex = firstIndex;
+        for (String message : saved) {
+            append(message);
+        }
+    }
+
+    public int getFirstIndex() { return Math.max(0, nextIndex - messages.length); }
+    public int getNextIndex() { return nextIndex; }
+}
@@ -1,24 +1,32 @@
 // Shaolong Xu 1067946
 
 import javax.swing.*;
-import java.awt.Point;
 import java.rmi.Naming;
 import java.rmi.RemoteException;
-import java.util.Random;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.rmi.server.UnicastRemoteObject;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 
 public class Client extends UnicastRemoteObject implements ClientInterface{
     private boolean turn;
     private Timer heartbeatTimer;
-    private UUID gameId;
+    private volatile long lastContact; // Last time a call to or from the server succeeded
+    private volatile GameId gameId; // Also read by the heartbeat timer
+    private volatile char[][] board = new char[GameSession.CLASSIC_SIZE][GameSession.CLASSIC_SIZE]; // Sized by each game's first snapshot
+    private int lastSeq; // Move sequence number the local board reflects
+    private int nextChatIndex; // Index of the next chat message we expect
     private String username;
-    private static ServerInterface server;
+    private static volatile ServerInterface server;
+    private static volatile GameServerLocator locator; // Finds the shard owning our game when behind a router
+    private static volatile String standbyAddress; // <ip>:<port> of a hot standby to fail over to, if any
+    private final AtomicBoolean failingOver = new AtomicBoolean();
+
+    // The server grants 30 seconds to come back, and the standby takes over within a few
+    private static final long FAILOVER_TIMEOUT_MILLIS = 20_000;
     private ClientGUI gui;
 
     // 1. Initialization
@@ -37,7 +45,8 @@ public class Client extends UnicastRemoteObject implements ClientInterface{
     // 2. Gameplay Actions
     public synchronized void handleBoardClick(int i, int j) {
         try {
-            server.makeMove(gameId, username, i, j);
+            locator.forGame(gameId).makeMove(gameId, username, i, j);
+            markContact();
         } catch (RemoteException e) {
             handleServerCrash();
         }
@@ -47,75 +56,98 @@ public class Client extends UnicastRemoteObject implements ClientInterface{
         if (gameId != null) {
             try {
                 // Attempting to send the chat message to the server
-                server.sendChatMessage(gameId, username, message);
+                locator.forGame(gameId).sendChatMessage(gameId, username, message);
+                markContact();
             } catch (RemoteException e) {
                 handleServerCrash();
             }
         }
     }
 
-    public void randomMove() {
-        char[][] board;
-        try {
-            board = server.getBoard(gameId);
-        } catch (RemoteException e) {
-            handleServerCrash();
-            return;
+    // 3. Message Handling
+    @Override
+    public void applyUpdate(GameUpdate update) throws RemoteException {
+        markContact();
+
+        // A new game starts from an empty board
+        if (update.getGameId() != null && !update.getGameId().equals(gameId)) {
+            for (char[] row : board) {
+                Arrays.fill(row, '\0');
+            }
+            lastSeq = 0;
+            nextChatIndex = 0;
+            gui.showBoard(board);
         }
 
-        List<Point> availableMoves = new ArrayList<>();
+        if (update.isSnapshot()) {
+            board = update.getBoard();
+            lastSeq = update.getSeq();
+            gui.showBoard(board);
+        } else if (update.hasMove() && update.getSeq() == lastSeq + 1
+                && update.getRow() < board.length && update.getCol() < board[0].length) {
+            board[update.getRow()][update.getCol()] = update.getSymbol();
+            lastSeq = update.getSeq();
+            gui.showMove(update.getRow(), update.getCol(), update.getSymbol());
+        } else if (update.getSeq() > lastSeq && !update.isGameOver()) {
+            // We missed at least one move, ask for the whole board
+            requestSnapshot(update.getGameId());
+        }
 
-        // Identify available moves
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                if (board[i][j] == '\0') {
-                    availableMoves.add(new Point(i, j));
-                }
-            }
+        if (update.isGameOver()) {
+            this.turn = false;
+            this.gameId = null;
+            notifyGameOutcome(update.getOutcome().render());
+            return;
         }
 
-        // Make a random move
-        if (!availableMoves.isEmpty()) {
-            int randomIndex = new Random().nextInt(availableMoves.size());
-            Point randomMove = availableMoves.get(randomIndex);
-            handleBoardClick(randomMove.x, randomMove.y);
+        // Updating the status label and turn, and following the server's turn clock while in a game
+        if (update.getStatus() != null) {
+            gui.showStatus(update.getStatus().render());
+        }
+        this.turn = update.isYourTurn();
+        this.gameId = update.getGameId();
+        if (gameId != null) {
+            gui.showEnabled(true);
+            gui.showTurnClock(update.hasTurnClock() ? update.getTurnMillis() : 0);
         }
     }
 
-    // 3. Message Handling
-    @Override
-    public void updateGameBoard(char[][] board) throws RemoteException {
-        // Updating the GUI to reflect the current state of the game board
-        for (int i = 0; i < 3; i++) {
-            for (int j = 0; j < 3; j++) {
-                this.gui.getBoardButtons()[i][j].setText(Character.toString(board[i][j]));
-            }
+    private void requestSnapshot(GameId gameId) {
+        try {
+            locator.forGame(gameId).requestSnapshot(gameId, username);
+            markContact();
+        } catch (RemoteException e) {
+            handleServerCrash();
         }
     }
 
-    @Override
-    public void notifyGameOutcome(String message) throws RemoteException {
-        // Ensuring GUI updates are performed on the Event Dispatch Thread for thread safety
-        SwingUtilities.invokeLater(() -> {
-            // Re-enabling the GUI, displaying the game outcome message, resetting the timer, and handling the outcome
-            this.gui.getFrame().setEnabled(true);
-            this.gui.getStatusLabel().setText(message);
-            this.gui.resetTimer();
-            handleGameOutcome(message);
-        });
+    private void notifyGameOutcome(String message) {
+        // Re-enabling the GUI, displaying the game outcome message and stopping the timer
+        gui.showEnabled(true);
+        gui.showStatus(message);
+        gui.showTurnClock(0);
+        // Queued after the frame drawing the final move, so the board is complete behind the prompt
+        SwingUtilities.invokeLater(() -> handleGameOutcome(message));
     }
 
-    public void notifyStatus(String message) throws RemoteException {
-        // Updating the status label on the GUI with the provided message
-        this.gui.getStatusLabel().setText(message);
+    @Override
+    public void receiveChatMessage(int index, String message) throws RemoteException {
+        markContact();
+        // Appending only the new message; anything older than what we have is a duplicate
+        if (index >= nextChatIndex) {
+            gui.showChatMessage(message);
+            nextChatIndex = index + 1;
+        }
+        gui.showEnabled(true);
     }
 
     @Override
-    public void receiveChatMessage(String message) throws RemoteException {
-        // Updating the chat area and ensuring the GUI frame is active
-        gui.getChatArea().setText("");
-        gui.getChatArea().append(message + "\n");
-        gui.getFrame().setEnabled(true);
+    public void receiveChatHistory(List<String> messages, int nextIndex) throws RemoteException {
+        markContact();
+        // Replacing the chat area with the history sent on reconnect
+        gui.showChatHistory(messages);
+        nextChatIndex = nextIndex;
+        gui.showEnabled(true);
     }
 
     // 4. Cleanup and Error Handling
@@ -164,7 +196,7 @@ public class Client extends UnicastRemoteObject implements ClientInterface{
 
         if (confirm == JOptionPane.YES_OPTION) {
             try {
-                server.quitGame(gameId, username);
+                locator.forGame(gameId).quitGame(gameId, username);
                 JOptionPane.showMessageDialog(
                         this.gui.getFrame(),
                         "Thank you for playing! Hope to see you again soon.",
@@ -184,7 +216,14 @@ public class Client extends UnicastRemoteObject implements ClientInterface{
     }
 
     private void handleServerCrash() {
-        gui.resetTimer();
+        if (standbyAddress != null) {
+            failOver();
+            return;
+        }
+        if (failingOver.get()) {
+            return;
+        }
+        gui.showTurnClock(0);
         if (heartbeatTimer != null) {
             heartbeatTimer.cancel();
         }
@@ -196,7 +235,7 @@ public class Client extends UnicastRemoteObject implements ClientInterface{
                 JOptionPane.ERROR_MESSAGE);
 
         // Disable the GUI frame and wait for 3 seconds before exiting
-        gui.getFrame().setEnabled(false);
+        gui.showEnabled(false);
 
         try {
             Thread.sleep(3000);
@@ -206,47 +245,94 @@ public class Client extends UnicastRemoteObject implements ClientInterface{
         System.exit(0);
     }
 
-    // 5. Game State Management
-    public void switchTurn() {
-        turn = !turn;
-        gui.startTimer();
-    }
+    /**
+     * Moves to the hot standby, which takes over the primary's games once it notices the
+     * primary is gone, and resumes there through the usual reconnect path.
+     */
+    private void failOver() {
+        if (!failingOver.compareAndSet(false, true)) {
+            return;
+        }
+        if (heartbeatTimer != null) {
+            heartbeatTimer.cancel();
+        }
+        gui.showStatus("Connection lost. Reconnecting...");
+        gui.showEnabled(false);
 
-    public void setTurn() {
-        turn = true;
-        gui.startTimer();
-    }
+        // There is no second standby to move on to
+        String address = standbyAddress;
+        standbyAddress = null;
+        int colon = address.lastIndexOf(':');
 
-    public void setGameId(UUID gameId) {
-        // Setting the game ID and starting the timer
-        this.gameId = gameId;
-        gui.startTimer();
+        new Thread(() -> {
+            long deadline = System.currentTimeMillis() + FAILOVER_TIMEOUT_MILLIS;
+            while (true) {
+                try {
+                    ServerInterface standby = connect(address.substring(0, colon),
+                            Integer.parseInt(address.substring(colon + 1)));
+                    server = standby;
+                    locator = new GameServerLocator(standby);
+                    standby.handleClientReconnect(username, this);
+                    markContact();
+                    failingOver.set(false);
+                    startHeartbeat();
+                    // A game in progress is re-enabled by the snapshot the standby sends
+                    if (gameId == null) {
+                        gui.showEnabled(true);
+                    }
+                    return;
+                } catch (Exception e) {
+                    // The standby binds itself only once it has taken over
+                    if (System.currentTimeMillis() > deadline) {
+                        break;
+                    }
+                    try {
+                        Thread.sleep(500);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+            failingOver.set(false);
+            handleServerCrash();
+        }, "failover").start();
     }
 
+    // 5. Game State Management
     public boolean isTurn() {
         return turn;
     }
 
     // 6. Connection Management
+    private void markContact() {
+        lastContact = System.currentTimeMillis();
+    }
+
     public void startHeartbeat() {
         heartbeatTimer = new Timer();
         heartbeatTimer.scheduleAtFixedRate(new TimerTask() {
             @Override
             public void run() {
+                // Regular traffic already tells the server we are alive, so only fill in the quiet gaps
+                if (System.currentTimeMillis() - lastContact < 3000) {
+                    return;
+                }
                 try {
-                    server.heartbeat();
+                    locator.forGame(gameId).heartbeat(username);
+                    markContact();
                 } catch (Exception e) {
                     handleServerCrash();
                 }
             }
-        }, 0, 3000); // Send heartbeat every 3 seconds
+        }, 0, 1000);
     }
 
     public void freeze() {
+        // Stop the timer and disable the GUI frame
+        gui.showTurnClock(0);
+        gui.showEnabled(false);
         SwingUtilities.invokeLater(() -> {
-            // Reset the timer and disable the GUI frame
-            gui.resetTimer();
-            gui.getFrame().setEnabled(false);
             JOptionPane.showMessageDialog(gui.getFrame(),
                     "It looks like your opponent has disconnected.\n\n" +
                             "No worries! We're pausing the game for 30 seconds to give them a chance to return.\n" +
@@ -256,11 +342,13 @@ public class Client extends UnicastRemoteObject implements ClientInterface{
         });
     }
 
-    public void heartbeat() {}
+    public void heartbeat() {
+        markContact();
+    }
 
     // 7. Getters for Remote Interface
     @Override
-    public UUID getGameId() throws RemoteException {
+    public GameId getGameId() throws RemoteException {
         return gameId;
     }
 
@@ -273,12 +361,22 @@ public class Client extends UnicastRemoteObject implements ClientInterface{
     public synchronized void handleClientDisconnect() {
         try {
             // Attempt to notify the server about the client disconnect
-            server.handleClientDisconnect(gameId, username);
+            locator.forGame(gameId).handleClientDisconnect(gameId, username);
         } catch (RemoteException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Connects to a server, over the binary protocol if asked to.
+     */
+    private static ServerInterface connect(String serverIp, int port) throws Exception {
+        if ("nio".equals(System.getProperty("tictactoe.transport"))) {
+            return NioServerConnection.connect(serverIp, port);
+        }
+        return (ServerInterface) Naming.lookup("rmi://" + serverIp + ":" + port + "/GameServer");
+    }
+
     // 9. Main Method
     public static void main(String[] args) {
         if (args.length != 3) {
@@ -299,11 +397,12 @@ public class Client extends UnicastRemoteObject implements ClientInterface{
             return;
         }
 
-        String serverAddress = "rmi://" + serverIp + ":" + port + "/GameServer";
+        standbyAddress = System.getProperty("tictactoe.standby");
 
         try {
             // Connect to the server and create the client
-            server = (ServerInterface) Naming.lookup(serverAddress);
+            server = connect(serverIp, port);
+            locator = new GameServerLocator(server);
             new Client(username);
         } catch (java.net.MalformedURLException e) {
             JOptionPane.showMessageDialog(null,
@@ -317,7 +416,7 @@ public class Client extends UnicastRemoteObject implements ClientInterface{
                     "Unknown Host Error",
                     JOptionPane.ERROR_MESSAGE);
             System.exit(1);
-        } catch (java.rmi.ConnectException e) {
+        } catch (java.rmi.ConnectException | java.net.ConnectException e) {
             JOptionPane.showMessageDialog(null,
                     "Error: Cannot connect to the server. Please check the provided IP address and port number.",
                     "Connection Error",
@@ -8,25 +8,52 @@ import java.awt.event.WindowEvent;
 import java.awt.event.ActionListener;
 
 import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.text.AbstractDocument;
 import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
 import javax.swing.text.DocumentFilter;
+import javax.swing.text.Element;
 
+/**
+ * The client window. The {@code show} methods may be called from any thread, such as
+ * the RMI threads delivering updates: they only record the change and schedule a
+ * frame on the event dispatch thread, and everything recorded before that frame runs
+ * is drawn in it together. A frame touches only the board cells that changed and
+ * appends new chat lines to a document capped at {@code MAX_CHAT_LINES} lines.
+ */
 public class ClientGUI {
+    private static final int MAX_CHAT_LINES = 200;
+    private static final int CLOCK_UNCHANGED = -1;
+
     private JFrame frame;
-    private JButton [][] boardButtons = new JButton[3][3];
+    private final Client client;
+    private JPanel boardPanel;
+    private JButton [][] boardButtons = new JButton[0][0];
     private JTextArea chatArea;
     private JTextField chatInput;
     private JLabel statusLabel;
     private JLabel timerlabel;
     private Timer moveTimer;
-    private final int time = 20;
-    private int timeLeft;
+    private int timeLeft; // Seconds, as last told by the server's turn clock
+    private char[][] shownBoard = new char[0][0]; // What the buttons show; only touched on the EDT
+
+    // Changes waiting for the next frame, guarded by the lock
+    private final Object pendingLock = new Object();
+    private boolean frameScheduled;
+    private char[][] pendingBoard;
+    private final List<int[]> pendingMoves = new ArrayList<>(); // {row, col, symbol}, after pendingBoard
+    private String pendingStatus;
+    private int pendingClockMillis = CLOCK_UNCHANGED;
+    private Boolean pendingEnabled;
+    private boolean pendingChatCleared;
+    private final List<String> pendingChat = new ArrayList<>();
 
     public ClientGUI(String username, Client client){
-        this.timeLeft = time;
+        this.client = client;
         frame = new JFrame(username + " - Tic Tac Toe");
         frame.setSize(600, 400); //
 
@@ -42,26 +69,11 @@ public class ClientGUI {
         frame.setLayout(new BorderLayout(20, 20));
         frame.getRootPane().setBorder(BorderFactory.createEmptyBorder(15,15, 15, 15));
 
-        JPanel boardPanel = new JPanel(new GridLayout(3,3, 3, 3));
-        for (int i =0; i < 3; i++){
-            for(int j = 0; j < 3; j++){
-                JButton button = new JButton("");
-                final int x = i, y = j;
-
-                button.addActionListener(e -> {
-                    if (client.isTurn()) {
-                        client.handleBoardClick(x, y);
-                    } else {
-                        JOptionPane.showMessageDialog(frame, "It's not your turn yet!", "Wait", JOptionPane.WARNING_MESSAGE);
-                    }
-                });
-                boardButtons[i][j] = button;
-                boardPanel.add(button);
-            }
-        }
+        boardPanel = new JPanel();
+        drawBoard(new char[GameSession.CLASSIC_SIZE][GameSession.CLASSIC_SIZE]);
         boardPanel.setBorder(BorderFactory.createTitledBorder("Game Board"));
         JPanel leftPanel = new JPanel(new BorderLayout(10, 10));
-        timerlabel = new JLabel("Time left: " + timeLeft);
+        timerlabel = new JLabel("Time left: -");
         timerlabel.setFont(new Font("Sans Serif", Font.BOLD, 16));
         timerlabel.setForeground(Color.GREEN);
         timerlabel.setHorizontalAlignment(JLabel.CENTER);
@@ -71,11 +83,9 @@ public class ClientGUI {
             public void actionPerformed(ActionEvent e) {
                 timeLeft--;
                 timerlabel.setText("Time left: " + timeLeft);
+                // The server plays the move itself once the time is up
                 if (timeLeft <= 0){
-                    resetTimer();
-                    if(client.isTurn()){
-                        client.randomMove();
-                    }
+                    moveTimer.stop();
                 }
             }
         });
@@ -123,6 +133,194 @@ public class ClientGUI {
         frame.setVisible(true);
     }
 
+    /**
+     * Shows a whole board, as sent with a new game or after missed moves.
+     */
+    public void showBoard(char[][] board) {
+        char[][] copy = new char[board.length][];
+        for (int i = 0; i < board.length; i++) {
+            copy[i] = board[i].clone();
+        }
+        synchronized (pendingLock) {
+            pendingBoard = copy;
+            pendingMoves.clear();
+            scheduleFrame();
+        }
+    }
+
+    public void showMove(int row, int col, char symbol) {
+        synchronized (pendingLock) {
+            pendingMoves.add(new int[]{row, col, symbol});
+            scheduleFrame();
+        }
+    }
+
+    public void showStatus(String status) {
+        synchronized (pendingLock) {
+            pendingStatus = status;
+            scheduleFrame();
+        }
+    }
+
+    /**
+     * Counts down the time the server gives the current move, or stops the count at 0.
+     */
+    public void showTurnClock(int millis) {
+        synchronized (pendingLock) {
+            pendingClockMillis = millis;
+            scheduleFrame();
+        }
+    }
+
+    public void showEnabled(boolean enabled) {
+        synchronized (pendingLock) {
+            pendingEnabled = enabled;
+            scheduleFrame();
+        }
+    }
+
+    public void showChatMessage(String message) {
+        synchronized (pendingLock) {
+            pendingChat.add(message);
+            scheduleFrame();
+        }
+    }
+
+    /**
+     * Replaces the chat with the history sent on reconnect.
+     */
+    public void showChatHistory(List<String> messages) {
+        synchronized (pendingLock) {
+            pendingChatCleared = true;
+            pendingChat.clear();
+            pendingChat.addAll(messages);
+            scheduleFrame();
+        }
+    }
+
+    // Called holding the lock
+    private void scheduleFrame() {
+        if (!frameScheduled) {
+            frameScheduled = true;
+            SwingUtilities.invokeLater(this::renderFrame);
+        }
+    }
+
+    private void renderFrame() {
+        char[][] board;
+        List<int[]> moves;
+        String status;
+        int clockMillis;
+        Boolean enabled;
+        boolean chatCleared;
+        List<String> chat;
+        synchronized (pendingLock) {
+            frameScheduled = false;
+            board = pendingBoard;
+            moves = new ArrayList<>(pendingMoves);
+            status = pendingStatus;
+            clockMillis = pendingClockMillis;
+            enabled = pendingEnabled;
+            chatCleared = pendingChatCleared;
+            chat = new ArrayList<>(pendingChat);
+            pendingBoard = null;
+            pendingMoves.clear();
+            pendingStatus = null;
+            pendingClockMillis = CLOCK_UNCHANGED;
+            pendingEnabled = null;
+            pendingChatCleared = false;
+            pendingChat.clear();
+        }
+
+        if (board != null) {
+            drawBoard(board);
+        }
+        for (int[] move : moves) {
+            drawCell(move[0], move[1], (char) move[2]);
+        }
+        if (status != null) {
+            statusLabel.setText(status);
+        }
+        if (clockMillis > 0) {
+            startTimer(clockMillis);
+        } else if (clockMillis == 0) {
+            resetTimer();
+        }
+        if (enabled != null) {
+            frame.setEnabled(enabled);
+        }
+        if (chatCleared || !chat.isEmpty()) {
+            drawChat(chatCleared, chat);
+        }
+    }
+
+    private void drawBoard(char[][] board) {
+        if (board.length != shownBoard.length || board[0].length != shownBoard[0].length) {
+            resizeBoard(board.length, board[0].length);
+        }
+        for (int i = 0; i < board.length; i++) {
+            for (int j = 0; j < board[i].length; j++) {
+                drawCell(i, j, board[i][j]);
+            }
+        }
+    }
+
+    private void drawCell(int row, int col, char symbol) {
+        if (row < shownBoard.length && col < shownBoard[row].length && shownBoard[row][col] != symbol) {
+            shownBoard[row][col] = symbol;
+            boardButtons[row][col].setText(symbol == '\0' ? "" : Character.toString(symbol));
+        }
+    }
+
+    private void drawChat(boolean cleared, List<String> messages) {
+        Document document = chatArea.getDocument();
+        try {
+            if (cleared) {
+                document.remove(0, document.getLength());
+            }
+            StringBuilder text = new StringBuilder();
+            for (String message : messages) {
+                text.append(message).append('\n');
+            }
+            document.insertString(document.getLength(), text.toString(), null);
+
+            // Drop the oldest lines; the last element is the empty line after the final newline
+            Element root = document.getDefaultRootElement();
+            int excess = root.getElementCount() - 1 - MAX_CHAT_LINES;
+            if (excess > 0) {
+                document.remove(0, root.getElement(excess - 1).getEndOffset());
+            }
+        } catch (BadLocationException e) {
+            System.err.println("Failed to update the chat: " + e.getMessage());
+        }
+    }
+
+    // Replaces the board buttons with an empty grid of the given size
+    private void resizeBoard(int rows, int cols){
+        boardPanel.removeAll();
+        boardPanel.setLayout(new GridLayout(rows, cols, 3, 3));
+        boardButtons = new JButton[rows][cols];
+        for (int i =0; i < rows; i++){
+            for(int j = 0; j < cols; j++){
+                JButton button = new JButton("");
+                final int x = i, y = j;
+
+                button.addActionListener(e -> {
+                    if (client.isTurn()) {
+                        client.handleBoardClick(x, y);
+                    } else {
+                        JOptionPane.showMessageDialog(frame, "It's not your turn yet!", "Wait", JOptionPane.WARNING_MESSAGE);
+                    }
+                });
+                boardButtons[i][j] = button;
+                boardPanel.add(button);
+            }
+        }
+        shownBoard = new char[rows][cols];
+        boardPanel.revalidate();
+        boardPanel.repaint();
+    }
+
     class LengthFilter extends DocumentFilter {
         private int max;
 
@@ -150,43 +348,25 @@ public class ClientGUI {
             }
         }
     }
-    public void startTimer() {
-        timeLeft = time;
+    private void startTimer(int millis) {
+        timeLeft = (millis + 999) / 1000;
         timerlabel.setText("Time left: " + timeLeft);
-        moveTimer.start();
+        moveTimer.restart();
     }
 
     public JFrame getFrame(){
         return frame;
     }
 
-    public JLabel getStatusLabel(){
-        return statusLabel;
-    }
-
     public void refresh(){
-        for (int i = 0; i < 3; i++){
-            for (int j = 0; j < 3; j++){
-                boardButtons[i][j].setText(""); //text:
-            }
-        }
-
-        chatArea.setText (""); // t:
-        resetTimer();
+        showBoard(new char[shownBoard.length][shownBoard[0].length]);
+        showChatHistory(List.of());
+        showTurnClock(0);
     }
 
-    public void resetTimer(){
+    private void resetTimer(){
         moveTimer.stop();
-        timeLeft = time;
-        timerlabel.setText("Time left: " + timeLeft);
-    }
-
-    public JTextArea getChatArea(){
-        return chatArea;
-    }
-
-    public JButton [][] getBoardButtons(){
-        return boardButtons;
+        timerlabel.setText("Time left: -");
     }
 
 }
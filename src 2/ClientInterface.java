@@ -2,18 +2,14 @@
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
-import java.util.UUID;
+import java.util.List;
 
 public interface ClientInterface extends Remote {
-    void notifyStatus(String string) throws RemoteException;;
-    void setTurn() throws RemoteException;
+    void applyUpdate(GameUpdate update) throws RemoteException;
     void freeze() throws RemoteException;
-    void receiveChatMessage(String message) throws RemoteException;
-    void setGameId(UUID gameId) throws RemoteException;
-    void switchTurn() throws RemoteException;
+    void receiveChatMessage(int index, String message) throws RemoteException;
+    void receiveChatHistory(List<String> messages, int nextIndex) throws RemoteException;
     void heartbeat() throws RemoteException;
-    void updateGameBoard(char[][] board) throws RemoteException;
-    void notifyGameOutcome(String message) throws RemoteException;
-    UUID getGameId() throws RemoteException;
+    GameId getGameId() throws RemoteException;
     String getUsername() throws RemoteException;
 }
@@ -0,0 +1,108 @@
+// Shaolong Xu 1067946
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent hashing over named nodes. Each node is placed on the ring at many
+ * virtual points, so keys spread evenly and adding or removing a node only moves
+ * the keys next to its points instead of reshuffling everything.
+ *
+ * @param <T> The node type.
+ */
+public class ConsistentHashRing<T> {
+    private final int virtualNodes;
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+    private final Map<String, T> nodes = new HashMap<>();
+
+    /**
+     * @param virtualNodes Points per node on the ring.
+     */
+    public ConsistentHashRing(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * Adds a node, or replaces the node of the same name, as when a shard restarts.
+     */
+    public synchronized void add(String name, T node) {
+        if (nodes.put(name, node) == null) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(name + "#" + i), name);
+            }
+        }
+    }
+
+    /**
+     * Removes a node if it is still the one registered under its name.
+     *
+     * @return true if the node was removed.
+     */
+    public synchronized boolean remove(String name, T node) {
+        if (!nodes.remove(name, node)) {
+            return false;
+        }
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.remove(hash(name + "#" + i), name);
+        }
+        return true;
+    }
+
+    /**
+     * @param keyHash A well-mixed 64-bit hash of the key.
+     * @return The node owning the key, or null if the ring is empty.
+     */
+    public synchronized T get(long keyHash) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = ring.ceilingEntry(keyHash);
+        return nodes.get(entry != null ? entry.getValue() : ring.firstEntry().getValue());
+    }
+
+    public synchronized List<T> getNodes() {
+        return new ArrayList<>(nodes.values());
+    }
+
+    public synchronized String nameOf(T node) {
+        for (Map.Entry<String, T> entry : nodes.entrySet()) {
+            if (entry.getValue() == node) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes, finished with {@link #mix(long)}.
+     */
+    public static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * The MurmurHash3 finaliser, spreading every input bit over the whole result.
+     */
+    public static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
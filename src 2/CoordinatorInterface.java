@@ -0,0 +1,26 @@
+// Shaolong Xu 1067946
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * What game shards need from the router: joining the ring, and the player points
+ * shared by all shards. Points are only ever changed through {@link #recordResult},
+ * as deltas, so a result reported late never overwrites a newer one.
+ */
+public interface CoordinatorInterface extends Remote {
+    /**
+     * Adds a shard to the ring, replacing a previous shard of the same name.
+     */
+    void registerShard(String name, ShardInterface shard) throws RemoteException;
+
+    /**
+     * Applies the points won or lost in a finished game; scores never drop below zero.
+     */
+    void recordResult(GameId gameId, String player1, int delta1, String player2, int delta2) throws RemoteException;
+
+    /**
+     * @return The number of players at each point value, from which a shard rebuilds its ranks.
+     */
+    int[] getPointCounts() throws RemoteException;
+}
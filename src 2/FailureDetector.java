@@ -0,0 +1,145 @@
+// Shaolong Xu 1067946
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Phi accrual failure detector for connected clients.
+ * Every inbound call, delivered callback and answered probe counts as a heartbeat.
+ * Suspicion grows with the time since the last one, scaled by the intervals seen
+ * so far, so request handlers can ask about liveness without any network I/O.
+ */
+public class FailureDetector {
+    private static final int WINDOW_SIZE = 100;
+    private static final long MIN_STD_DEVIATION_MILLIS = 500;
+
+    private final double threshold;
+    private final long bootstrapIntervalMillis;
+    private final long acceptablePauseMillis;
+    private final long minProbeIntervalMillis;
+    private final long maxProbeIntervalMillis;
+    private final Map<String, ArrivalWindow> windows = new ConcurrentHashMap<>();
+
+    /**
+     * @param threshold               Phi above which a client is suspected, e.g. 8.
+     * @param bootstrapIntervalMillis Expected interval before any samples exist.
+     * @param acceptablePauseMillis   Extra silence tolerated on top of the mean, e.g. for GC pauses.
+     * @param minProbeIntervalMillis  Lower bound for the probe interval.
+     * @param maxProbeIntervalMillis  Upper bound for the probe interval.
+     */
+    public FailureDetector(double threshold, long bootstrapIntervalMillis, long acceptablePauseMillis,
+                           long minProbeIntervalMillis, long maxProbeIntervalMillis) {
+        this.threshold = threshold;
+        this.bootstrapIntervalMillis = bootstrapIntervalMillis;
+        this.acceptablePauseMillis = acceptablePauseMillis;
+        this.minProbeIntervalMillis = minProbeIntervalMillis;
+        this.maxProbeIntervalMillis = maxProbeIntervalMillis;
+    }
+
+    /**
+     * Records that the client was heard from just now.
+     *
+     * @param username The player whose client sent or answered a call.
+     */
+    public void heartbeat(String username) {
+        long now = System.currentTimeMillis();
+        windows.computeIfAbsent(username, name -> new ArrivalWindow(now)).record(now);
+    }
+
+    /**
+     * Forgets the learned intervals, e.g. when a player comes back on a new client.
+     */
+    public void reset(String username) {
+        windows.remove(username);
+    }
+
+    public double phi(String username) {
+        ArrivalWindow window = windows.get(username);
+        return window == null ? 0.0 : window.phi(System.currentTimeMillis());
+    }
+
+    /**
+     * @return true if the client has been silent for much longer than its usual intervals.
+     *         Clients never heard from are not suspected.
+     */
+    public boolean isSuspected(String username) {
+        return phi(username) > threshold;
+    }
+
+    /**
+     * Claims a background probe for the client if it has been quiet for about one
+     * mean interval and no probe is already outstanding.
+     *
+     * @return true if the caller should send a probe now.
+     */
+    public boolean shouldProbe(String username) {
+        ArrivalWindow window = windows.get(username);
+        return window != null && window.claimProbe(System.currentTimeMillis());
+    }
+
+    private class ArrivalWindow {
+        private final long[] intervals = new long[WINDOW_SIZE];
+        private int count;
+        private int next;
+        private long sum;
+        private double sumOfSquares;
+        private long lastArrival;
+        private long lastProbe;
+
+        ArrivalWindow(long now) {
+            // Seed with the expected interval so the first few silences are judged sensibly
+            add(bootstrapIntervalMillis);
+            this.lastArrival = now;
+        }
+
+        synchronized void record(long now) {
+            long interval = now - lastArrival;
+            if (interval > 0) {
+                add(interval);
+            }
+            lastArrival = now;
+        }
+
+        private void add(long interval) {
+            if (count == WINDOW_SIZE) {
+                long evicted = intervals[next];
+                sum -= evicted;
+                sumOfSquares -= (double) evicted * evicted;
+            } else {
+                count++;
+            }
+            intervals[next] = interval;
+            next = (next + 1) % WINDOW_SIZE;
+            sum += interval;
+            sumOfSquares += (double) interval * interval;
+        }
+
+        private double mean() {
+            return (double) sum / count;
+        }
+
+        synchronized double phi(long now) {
+            double mean = mean();
+            double variance = Math.max(0.0, sumOfSquares / count - mean * mean);
+            double stdDeviation = Math.max(Math.sqrt(variance), MIN_STD_DEVIATION_MILLIS);
+            double elapsed = now - lastArrival;
+
+            // Logistic approximation of the normal CDF, as used by Akka's detector
+            double y = (elapsed - (mean + acceptablePauseMillis)) / stdDeviation;
+            double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+            if (elapsed > mean + acceptablePauseMillis) {
+                return -Math.log10(e / (1.0 + e));
+            }
+            return -Math.log10(1.0 - 1.0 / (1.0 + e));
+        }
+
+        synchronized boolean claimProbe(long now) {
+            long interval = Math.min(maxProbeIntervalMillis, Math.max(minProbeIntervalMillis, (long) mean()));
+            if (now - Math.max(lastArrival, lastProbe) < interval) {
+                return false;
+            }
+            lastProbe = now;
+            return true;
+        }
+    }
+}
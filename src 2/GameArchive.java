@@ -0,0 +1,339 @@
+// Shaolong Xu 1067946
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Archive of finished games in append-only segment files.
+ * A game is stored in at most 18 bytes: a header byte holding the move count and
+ * outcome, the end time in seconds, both players' store IDs, and the moves as
+ * four-bit cell numbers. Player 1 always plays 'X' and moves first, so the moves
+ * alone rebuild the board. Only games on the classic 3x3 board fit this form, so
+ * games on larger boards are not archived.
+ *
+ * <p>Segments start with magic {@code "TTGA"} and a version. The index from player
+ * to game positions is kept in memory and rebuilt with one sequential pass over
+ * the segments when the archive is opened.
+ */
+public class GameArchive implements AutoCloseable {
+    public static final byte DRAW = 0, PLAYER1_WON = 1, PLAYER2_WON = 2;
+
+    private static final int MAGIC = 0x54544741; // "TTGA"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int FIXED_SIZE = 13; // header byte, end time, two player IDs
+    private static final long SEGMENT_BYTES = 64L << 20;
+
+    /**
+     * One finished game read back from the archive.
+     */
+    public static final class ArchivedGame {
+        private final int player1Id, player2Id;
+        private final long endedAtSeconds;
+        private final byte outcome;
+        private final int moveCount;
+        private final long moveLog;
+
+        ArchivedGame(int player1Id, int player2Id, long endedAtSeconds, byte outcome, int moveCount, long moveLog) {
+            this.player1Id = player1Id;
+            this.player2Id = player2Id;
+            this.endedAtSeconds = endedAtSeconds;
+            this.outcome = outcome;
+            this.moveCount = moveCount;
+            this.moveLog = moveLog;
+        }
+
+        public int getPlayer1Id() { return player1Id; }
+        public int getPlayer2Id() { return player2Id; }
+        public long getEndedAtSeconds() { return endedAtSeconds; }
+        public byte getOutcome() { return outcome; }
+        public int getMoveCount() { return moveCount; }
+
+        /**
+         * @return The cell, numbered row * 3 + col, played by the given move.
+         */
+        public int getMove(int move) {
+            return (int) (moveLog >>> (4 * move)) & 0xF;
+        }
+
+        /**
+         * Rebuilds the board as it stood after the given number of moves, for stepping through a replay.
+         */
+        public char[][] getBoard(int moves) {
+            char[][] board = new char[3][3];
+            for (char[] row : board) {
+                Arrays.fill(row, ' ');
+            }
+            for (int move = 0; move < moves; move++) {
+                int cell = getMove(move);
+                board[cell / 3][cell % 3] = move % 2 == 0 ? 'X' : 'O';
+            }
+            return board;
+        }
+    }
+
+    private final Path directory;
+    private final List<FileChannel> segments = new ArrayList<>();
+    // Positions of each player's games, as segment << 32 | offset, oldest first
+    private final Map<Integer, long[]> postings = new HashMap<>();
+    private final Map<Integer, Integer> postingCounts = new HashMap<>();
+    private long writeOffset;
+    private int gameCount;
+
+    private GameArchive(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Opens the archive, indexing every stored game and dropping a torn record left by a crash.
+     */
+    public static GameArchive open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        GameArchive archive = new GameArchive(directory);
+        for (int number = 0; Files.exists(archive.segmentFile(number)); number++) {
+            archive.segments.add(FileChannel.open(archive.segmentFile(number),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE));
+        }
+        if (archive.segments.isEmpty()) {
+            archive.startSegment();
+        } else {
+            // A crash while starting a segment can leave it without a whole header
+            FileChannel last = archive.segments.get(archive.segments.size() - 1);
+            if (last.size() < HEADER_SIZE) {
+                last.truncate(0);
+                writeHeader(last);
+            }
+        }
+
+        try (Reader reader = archive.openReader()) {
+            while (reader.next() != null) {
+                archive.index(reader.lastPosition(), reader.lastGame());
+            }
+            archive.writeOffset = reader.offset;
+            archive.segments.get(archive.segments.size() - 1).truncate(archive.writeOffset);
+        }
+        return archive;
+    }
+
+    /**
+     * Appends a finished game.
+     *
+     * @param player1Id The store ID of the player who played 'X'.
+     * @param player2Id The store ID of the player who played 'O'.
+     * @param moves     The cells of a classic game, numbered row * 3 + col, in the order played.
+     * @param outcome   {@link #DRAW}, {@link #PLAYER1_WON} or {@link #PLAYER2_WON}.
+     */
+    public synchronized void append(int player1Id, int player2Id, short[] moves, byte outcome)
+            throws IOException {
+        int moveCount = moves.length;
+        long moveLog = 0;
+        for (int move = 0; move < moveCount; move++) {
+            moveLog |= (long) moves[move] << (4 * move);
+        }
+        ArchivedGame game = new ArchivedGame(player1Id, player2Id,
+                System.currentTimeMillis() / 1000, outcome, moveCount, moveLog);
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_SIZE + (moveCount + 1) / 2);
+        buffer.put((byte) (moveCount << 4 | outcome));
+        buffer.putInt((int) game.endedAtSeconds);
+        buffer.putInt(player1Id);
+        buffer.putInt(player2Id);
+        for (int move = 0; move < moveCount; move += 2) {
+            int next = move + 1 < moveCount ? game.getMove(move + 1) : 0;
+            buffer.put((byte) (game.getMove(move) | next << 4));
+        }
+        buffer.flip();
+
+        if (writeOffset + buffer.remaining() > SEGMENT_BYTES) {
+            startSegment();
+        }
+        int segment = segments.size() - 1;
+        long position = (long) segment << 32 | writeOffset;
+        while (buffer.hasRemaining()) {
+            writeOffset += segments.get(segment).write(buffer, writeOffset);
+        }
+        index(position, game);
+    }
+
+    /**
+     * Looks up a player's games through the index, oldest first.
+     *
+     * @param playerId The player's store ID.
+     */
+    public synchronized List<ArchivedGame> findGames(int playerId) throws IOException {
+        long[] positions = postings.get(playerId);
+        if (positions == null) {
+            return new ArrayList<>();
+        }
+        int count = postingCounts.get(playerId);
+        List<ArchivedGame> games = new ArrayList<>(count);
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_SIZE + 5);
+        for (int i = 0; i < count; i++) {
+            buffer.clear();
+            FileChannel channel = segments.get((int) (positions[i] >>> 32));
+            channel.read(buffer, positions[i] & 0xFFFFFFFFL);
+            buffer.flip();
+            games.add(decode(buffer));
+        }
+        return games;
+    }
+
+    /**
+     * Opens a reader that streams every archived game in the order it was stored.
+     * Each segment is read front to back, so exporting the whole archive is sequential I/O.
+     */
+    public synchronized Reader openReader() {
+        return new Reader(segments.size());
+    }
+
+    public synchronized int size() {
+        return gameCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (FileChannel channel : segments) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    private void index(long position, ArchivedGame game) {
+        gameCount++;
+        addPosting(game.player1Id, position);
+        addPosting(game.player2Id, position);
+    }
+
+    private void addPosting(int playerId, long position) {
+        long[] positions = postings.get(playerId);
+        int count = postingCounts.getOrDefault(playerId, 0);
+        if (positions == null || count == positions.length) {
+            positions = positions == null ? new long[4] : Arrays.copyOf(positions, count * 2);
+            postings.put(playerId, positions);
+        }
+        positions[count] = position;
+        postingCounts.put(playerId, count + 1);
+    }
+
+    private void startSegment() throws IOException {
+        FileChannel channel = FileChannel.open(segmentFile(segments.size()),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        writeHeader(channel);
+        segments.add(channel);
+        writeOffset = HEADER_SIZE;
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private Path segmentFile(int number) {
+        return directory.resolve(String.format("games-%06d.dat", number));
+    }
+
+    private static ArchivedGame decode(ByteBuffer buffer) {
+        int header = buffer.get() & 0xFF;
+        long endedAt = buffer.getInt() & 0xFFFFFFFFL;
+        int player1Id = buffer.getInt();
+        int player2Id = buffer.getInt();
+        int moveCount = header >>> 4;
+        long moveLog = 0;
+        for (int move = 0; move < moveCount; move += 2) {
+            moveLog |= (long) (buffer.get() & 0xFF) << (4 * move);
+        }
+        return new ArchivedGame(player1Id, player2Id, endedAt, (byte) (header & 0x3), moveCount, moveLog);
+    }
+
+    /**
+     * Streams archived games from the start of the first segment to the end of the last.
+     */
+    public final class Reader implements AutoCloseable {
+        private final int segmentCount;
+        private int segment = -1;
+        private long offset;
+        private DataInputStream in;
+        private ArchivedGame lastGame;
+        private long lastPosition;
+
+        private Reader(int segmentCount) {
+            this.segmentCount = segmentCount;
+        }
+
+        /**
+         * @return The next game, or null once every segment has been read.
+         */
+        public ArchivedGame next() throws IOException {
+            while (true) {
+                if (in == null && !openNextSegment()) {
+                    return null;
+                }
+                byte[] record = readRecord();
+                if (record != null) {
+                    lastPosition = (long) segment << 32 | offset;
+                    offset += record.length;
+                    lastGame = decode(ByteBuffer.wrap(record));
+                    return lastGame;
+                }
+                in.close();
+                in = null;
+                // A torn record can only end the last segment
+                if (segment == segmentCount - 1) {
+                    return null;
+                }
+            }
+        }
+
+        ArchivedGame lastGame() { return lastGame; }
+        long lastPosition() { return lastPosition; }
+
+        private boolean openNextSegment() throws IOException {
+            if (segment + 1 >= segmentCount) {
+                return false;
+            }
+            segment++;
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segmentFile(segment)), 1 << 16));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unrecognised archive segment " + segmentFile(segment));
+            }
+            offset = HEADER_SIZE;
+            return true;
+        }
+
+        private byte[] readRecord() throws IOException {
+            int header = in.read();
+            if (header < 0) {
+                return null;
+            }
+            byte[] record = new byte[FIXED_SIZE + ((header >>> 4) + 1) / 2];
+            record[0] = (byte) header;
+            try {
+                in.readFully(record, 1, record.length - 1);
+            } catch (EOFException e) {
+                return null;
+            }
+            return record;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+// Shaolong Xu 1067946
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.UUID;
+
+/**
+ * A game ID as it travels over RMI: the two halves of the server's UUID and nothing else,
+ * instead of the field descriptors that default serialization of {@link UUID} sends.
+ */
+public final class GameId implements Externalizable {
+    private static final long serialVersionUID = 1L;
+
+    private long mostSigBits;
+    private long leastSigBits;
+
+    /**
+     * For deserialization only.
+     */
+    public GameId() {
+    }
+
+    private GameId(long mostSigBits, long leastSigBits) {
+        this.mostSigBits = mostSigBits;
+        this.leastSigBits = leastSigBits;
+    }
+
+    /**
+     * @return The wire form of the ID, or null for a null ID.
+     */
+    public static GameId of(UUID id) {
+        return id == null ? null : new GameId(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    public static GameId of(long mostSigBits, long leastSigBits) {
+        return new GameId(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * @return The server's UUID for the ID, or null for a null ID.
+     */
+    public static UUID toUuid(GameId id) {
+        return id == null ? null : new UUID(id.mostSigBits, id.leastSigBits);
+    }
+
+    public long getMostSigBits() { return mostSigBits; }
+    public long getLeastSigBits() { return leastSigBits; }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeLong(mostSigBits);
+        out.writeLong(leastSigBits);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        mostSigBits = in.readLong();
+        leastSigBits = in.readLong();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof GameId)) {
+            return false;
+        }
+        GameId id = (GameId) other;
+        return mostSigBits == id.mostSigBits && leastSigBits == id.leastSigBits;
+    }
+
+    @Override
+    public int hashCode() {
+        long hash = mostSigBits ^ leastSigBits;
+        return (int) (hash >> 32) ^ (int) hash;
+    }
+
+    @Override
+    public String toString() {
+        return new UUID(mostSigBits, leastSigBits).toString();
+    }
+}
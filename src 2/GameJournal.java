@@ -0,0 +1,454 @@
+// Shaolong Xu 1067946
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of game events, used to rebuild active games after a crash.
+ * Appends only copy the record into a buffer; a single flusher thread writes the
+ * buffer and calls {@code force()} once for everything appended since the last
+ * flush, so concurrent moves share one disk sync (group commit).
+ *
+ * <p>The journal is a directory of numbered segment files. {@link #rotate()} starts a
+ * new segment so that older ones can be deleted once a snapshot covers them.
+ * Each record is {@code [int length][byte type][long time][payload][int crc]}.
+ * A torn record at the end of the last segment is dropped when the journal is opened.
+ */
+public class GameJournal implements AutoCloseable {
+
+    public interface Listener {
+        void onCreate(long time, UUID gameId, String player1, String player2, char player1Symbol,
+                      int size, int winLength);
+        void onMove(long time, UUID gameId, int seq, int row, int col, char symbol);
+        void onChat(long time, UUID gameId, int index, String message);
+        void onDisconnect(long time, UUID gameId, String username);
+        void onReconnect(long time, UUID gameId, String username);
+        void onOutcome(long time, UUID gameId, String outcome);
+    }
+
+    private static final byte CREATE = 1, MOVE = 2, CHAT = 3, DISCONNECT = 4, RECONNECT = 5, OUTCOME = 6;
+
+    private final Path directory;
+    private final long recoveredSegment;
+    private final long recoveredEnd;
+    private final Thread flusher;
+    private FileChannel channel; // Only touched by the flusher once the journal is open
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private ByteArrayOutputStream spare = new ByteArrayOutputStream();
+    private ByteArrayOutputStream sealed; // The tail of the current segment, set by rotate()
+    private long sealedLsn;
+    private long segment;
+    private long appendedLsn;
+    private long durableLsn;
+    private IOException failure;
+    private boolean closed;
+    private Consumer<byte[]> tap; // Sees every record in append order, e.g. to replicate it
+
+    private GameJournal(Path directory, long segment, long recoveredEnd, FileChannel channel) {
+        this.directory = directory;
+        this.segment = segment;
+        this.recoveredSegment = segment;
+        this.recoveredEnd = recoveredEnd;
+        this.channel = channel;
+        this.flusher = new Thread(this::runFlusher, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Opens the journal for appending to its newest segment, dropping any torn record left by a crash.
+     */
+    public static GameJournal open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        List<Long> segments = listSegments(directory);
+        long last = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        FileChannel channel = FileChannel.open(segmentFile(directory, last),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long validEnd = scan(channel, Long.MAX_VALUE, null);
+        channel.truncate(validEnd);
+        channel.position(validEnd);
+        return new GameJournal(directory, last, validEnd, channel);
+    }
+
+    /**
+     * Feeds the records found when the journal was opened to the listener, oldest first.
+     *
+     * @param fromSegment The first segment to read; earlier ones are covered by a snapshot.
+     */
+    public void replay(long fromSegment, Listener listener) throws IOException {
+        for (long number : listSegments(directory)) {
+            if (number < fromSegment || number > recoveredSegment) {
+                continue;
+            }
+            // A separate channel keeps the append position untouched
+            try (FileChannel reader = FileChannel.open(segmentFile(directory, number), StandardOpenOption.READ)) {
+                scan(reader, number == recoveredSegment ? recoveredEnd : Long.MAX_VALUE, listener);
+            }
+        }
+    }
+
+    /**
+     * Ends the current segment. Every record appended before this call stays in the
+     * old segment and every record appended after it goes to the new one.
+     * Returns once the old segment is on disk and the new one exists, so the segments
+     * before the new one can be deleted straight away.
+     *
+     * @return The number of the new segment.
+     */
+    public synchronized long rotate() throws IOException {
+        awaitSealedWritten();
+        sealed = pending;
+        sealedLsn = appendedLsn;
+        pending = new ByteArrayOutputStream();
+        segment++;
+        notifyAll();
+
+        // The flusher opens the new segment once it has written the old one
+        awaitSealedWritten();
+        return segment;
+    }
+
+    private void awaitSealedWritten() throws IOException {
+        while (sealed != null && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while rotating the journal", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Deletes the segments that come before the given one.
+     */
+    public void deleteSegmentsBefore(long firstKept) throws IOException {
+        for (long number : listSegments(directory)) {
+            if (number < firstKept) {
+                Files.deleteIfExists(segmentFile(directory, number));
+            }
+        }
+    }
+
+    private static Path segmentFile(Path directory, long number) {
+        return directory.resolve(String.format("journal-%010d.log", number));
+    }
+
+    private static List<Long> listSegments(Path directory) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "journal-*.log")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                segments.add(Long.parseLong(name.substring("journal-".length(), name.length() - ".log".length())));
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Passes every record appended from now on to the tap, in append order and while the
+     * journal's lock is held, so the tap must only hand the record off.
+     * Decode the records with {@link #decode(byte[], Listener)}.
+     */
+    public synchronized void setTap(Consumer<byte[]> tap) {
+        this.tap = tap;
+    }
+
+    // Appending
+
+    public long appendCreate(UUID gameId, String player1, String player2, char player1Symbol,
+                             int size, int winLength) {
+        return append(CREATE, gameId, out -> {
+            out.writeUTF(player1);
+            out.writeUTF(player2);
+            out.writeChar(player1Symbol);
+            out.writeByte(size);
+            out.writeByte(winLength);
+        });
+    }
+
+    public long appendMove(UUID gameId, int seq, int row, int col, char symbol) {
+        return append(MOVE, gameId, out -> {
+            out.writeInt(seq);
+            out.writeByte(row);
+            out.writeByte(col);
+            out.writeChar(symbol);
+        });
+    }
+
+    /**
+     * Appends a move that ends its game together with the game's outcome, in one batch,
+     * so the journal never holds the move without the outcome.
+     */
+    public long appendMove(UUID gameId, int seq, int row, int col, char symbol, String outcome) {
+        return append(record(MOVE, gameId, out -> {
+            out.writeInt(seq);
+            out.writeByte(row);
+            out.writeByte(col);
+            out.writeChar(symbol);
+        }), record(OUTCOME, gameId, out -> out.writeUTF(outcome)));
+    }
+
+    public long appendChat(UUID gameId, int index, String message) {
+        return append(CHAT, gameId, out -> {
+            out.writeInt(index);
+            out.writeUTF(message);
+        });
+    }
+
+    public long appendDisconnect(UUID gameId, String username) {
+        return append(DISCONNECT, gameId, out -> out.writeUTF(username));
+    }
+
+    public long appendReconnect(UUID gameId, String username) {
+        return append(RECONNECT, gameId, out -> out.writeUTF(username));
+    }
+
+    public long appendOutcome(UUID gameId, String outcome) {
+        return append(OUTCOME, gameId, out -> out.writeUTF(outcome));
+    }
+
+    /**
+     * Blocks until the record with the given sequence number, and everything before it, is on disk.
+     */
+    public synchronized void awaitDurable(long lsn) throws IOException {
+        while (durableLsn < lsn && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the journal", e);
+            }
+        }
+        if (durableLsn < lsn) {
+            throw failure;
+        }
+    }
+
+    private interface PayloadWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private long append(byte type, UUID gameId, PayloadWriter payload) {
+        return append(record(type, gameId, payload));
+    }
+
+    private static byte[] record(byte type, UUID gameId, PayloadWriter payload) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(body)) {
+            out.writeByte(type);
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(gameId.getMostSignificantBits());
+            out.writeLong(gameId.getLeastSignificantBits());
+            payload.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Cannot happen for an in-memory stream
+        }
+        return body.toByteArray();
+    }
+
+    // Records appended in one call reach the flusher, and so the disk, in the same batch
+    private synchronized long append(byte[]... records) {
+        for (byte[] bytes : records) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            writeInt(pending, bytes.length);
+            pending.write(bytes, 0, bytes.length);
+            writeInt(pending, (int) crc.getValue());
+            appendedLsn++;
+            if (tap != null) {
+                tap.accept(bytes);
+            }
+        }
+        notifyAll();
+        return appendedLsn;
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private void runFlusher() {
+        while (true) {
+            ByteArrayOutputStream batch;
+            long batchLsn;
+            long nextSegment = -1;
+            synchronized (this) {
+                while (pending.size() == 0 && sealed == null && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (sealed != null) {
+                    // Finish the old segment before touching anything appended after the rotation
+                    batch = sealed;
+                    batchLsn = sealedLsn;
+                    nextSegment = segment;
+                } else if (pending.size() > 0) {
+                    // Swap buffers so appends continue while this batch is written
+                    batch = pending;
+                    pending = spare;
+                    spare = batch;
+                    batchLsn = appendedLsn;
+                } else {
+                    return;
+                }
+            }
+
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+                if (nextSegment >= 0) {
+                    channel.close();
+                    channel = FileChannel.open(segmentFile(directory, nextSegment),
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                System.err.println("Failed to write the game journal: " + e.getMessage());
+                return;
+            }
+
+            synchronized (this) {
+                batch.reset();
+                if (batch == sealed) {
+                    sealed = null;
+                }
+                durableLsn = batchLsn;
+                notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    // Reading
+
+    /**
+     * Reads records from the start of the channel, passing them to the listener if there is one.
+     *
+     * @return The position just after the last complete, intact record.
+     */
+    private static long scan(FileChannel channel, long limit, Listener listener) throws IOException {
+        long validEnd = 0;
+        long size = Math.min(channel.size(), limit);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel.position(0))));
+        while (validEnd + Integer.BYTES <= size) {
+            byte[] bytes;
+            int storedCrc;
+            try {
+                int length = in.readInt();
+                if (length <= 0 || validEnd + Integer.BYTES * 2 + length > size) {
+                    break;
+                }
+                bytes = new byte[length];
+                in.readFully(bytes);
+                storedCrc = in.readInt();
+            } catch (EOFException e) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            if ((int) crc.getValue() != storedCrc) {
+                break;
+            }
+            if (listener != null) {
+                dispatch(new DataInputStream(new ByteArrayInputStream(bytes)), listener);
+            }
+            validEnd += Integer.BYTES * 2 + bytes.length;
+        }
+        return validEnd;
+    }
+
+    /**
+     * Feeds one record received from a {@link #setTap tap} to the listener.
+     */
+    public static void decode(byte[] record, Listener listener) throws IOException {
+        dispatch(new DataInputStream(new ByteArrayInputStream(record)), listener);
+    }
+
+    private static void dispatch(DataInputStream in, Listener listener) throws IOException {
+        byte type = in.readByte();
+        long time = in.readLong();
+        UUID gameId = new UUID(in.readLong(), in.readLong());
+        switch (type) {
+            case CREATE:
+                String player1 = in.readUTF();
+                String player2 = in.readUTF();
+                char player1Symbol = in.readChar();
+                // Records written before boards had a size are classic games
+                if (in.available() > 0) {
+                    listener.onCreate(time, gameId, player1, player2, player1Symbol,
+                            in.readUnsignedByte(), in.readUnsignedByte());
+                } else {
+                    listener.onCreate(time, gameId, player1, player2, player1Symbol,
+                            GameSession.CLASSIC_SIZE, GameSession.CLASSIC_SIZE);
+                }
+                break;
+            case MOVE:
+                listener.onMove(time, gameId, in.readInt(), in.readByte(), in.readByte(), in.readChar());
+                break;
+            case CHAT:
+                listener.onChat(time, gameId, in.readInt(), in.readUTF());
+                break;
+            case DISCONNECT:
+                listener.onDisconnect(time, gameId, in.readUTF());
+                break;
+            case RECONNECT:
+                listener.onReconnect(time, gameId, in.readUTF());
+                break;
+            case OUTCOME:
+                listener.onOutcome(time, gameId, in.readUTF());
+                break;
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+// Shaolong Xu 1067946
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.rmi.AlreadyBoundException;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Entry point of a sharded deployment, bound as "GameServer" in place of a single
+ * {@link TicTacToeServer}. The router owns what every shard shares: the player store,
+ * the ranks and the matchmaking queue. Each pair it forms is started on the shard
+ * that owns the new game ID on a consistent hash ring, and clients then talk to that
+ * shard directly through {@link #getShard}. Game calls that still reach the router
+ * are forwarded.
+ */
+public class GameRouter extends UnicastRemoteObject implements RouterInterface, CoordinatorInterface {
+    private static final long serialVersionUID = 1L;
+
+    private final ConsistentHashRing<ShardInterface> ring = new ConsistentHashRing<>(128);
+    private final Map<GameId, ShardInterface> gameShards = new ConcurrentHashMap<>();
+    private final Map<String, GameId> playerGames = new ConcurrentHashMap<>();
+    private final Map<String, Player> allPlayers = new ConcurrentHashMap<>();
+    private final RankIndex rankIndex = new RankIndex();
+    private final PlayerStore playerStore;
+
+    // Only waiting players are watched here; shards watch the players in their games
+    private final FailureDetector failureDetector = new FailureDetector(8.0, 3000, 3000, 1000, 3000);
+    private final CallbackDispatcher dispatcher = new CallbackDispatcher(
+            Math.max(4, Runtime.getRuntime().availableProcessors() * 2),
+            (player, roundTripNanos) -> failureDetector.heartbeat(player.getUsername()),
+            this::handleCallbackFailure);
+    // Same pairing rules as a single server
+    private final MatchmakingEngine matchmaker = new MatchmakingEngine(10, 10, 5,
+            player -> !failureDetector.isSuspected(player.getUsername()), this::assignGame);
+
+    public GameRouter(PlayerStore playerStore) throws RemoteException {
+        this.playerStore = playerStore;
+        playerStore.forEachPoints(rankIndex::add);
+    }
+
+    public void startMatchmaking() {
+        matchmaker.start(200);
+    }
+
+    @Override
+    public void registerShard(String name, ShardInterface shard) {
+        ring.add(name, shard);
+        System.out.println("Shard " + name + " joined; " + ring.size() + " shard(s) in the ring.");
+    }
+
+    @Override
+    public void recordResult(GameId gameId, String player1, int delta1, String player2, int delta2) {
+        applyPoints(player1, delta1);
+        applyPoints(player2, delta2);
+        gameShards.remove(gameId);
+        playerGames.remove(player1, gameId);
+        playerGames.remove(player2, gameId);
+        evictIfIdle(player1);
+        evictIfIdle(player2);
+    }
+
+    /**
+     * Drops a player whose game has ended from the online map, unless they are already
+     * waiting for or playing another one. Their points stay in the player store.
+     */
+    private void evictIfIdle(String username) {
+        allPlayers.computeIfPresent(username, (name, player) ->
+                playerGames.containsKey(name) || matchmaker.isWaiting(player) ? player : null);
+    }
+
+    private void applyPoints(String username, int delta) {
+        Player player = allPlayers.computeIfAbsent(username, name -> loadPlayer(name, null));
+        // Deltas from different shards may arrive together for the same player
+        synchronized (player) {
+            player.syncPoints(Math.max(0, player.getPoints() + delta));
+        }
+    }
+
+    @Override
+    public int[] getPointCounts() {
+        return rankIndex.getCounts();
+    }
+
+    @Override
+    public ServerInterface getShard(GameId gameId) throws RemoteException {
+        ShardInterface shard = gameId == null ? null : gameShards.get(gameId);
+        if (shard == null) {
+            throw new RemoteException("No shard owns game " + gameId);
+        }
+        return shard;
+    }
+
+    /**
+     * Starts a pair formed by the matchmaker on the shard owning a fresh game ID.
+     * A shard that cannot be reached leaves the ring and the next one is tried.
+     */
+    private void assignGame(Player player, Player opponent) {
+        GameId gameId = GameId.of(UUID.randomUUID());
+        long hash = ConsistentHashRing.mix(gameId.getMostSigBits() ^ Long.rotateLeft(gameId.getLeastSigBits(), 32));
+        while (true) {
+            ShardInterface shard = ring.get(hash);
+            if (shard == null) {
+                System.err.println("No shard available; " + player.getUsername() + " and "
+                        + opponent.getUsername() + " go back in the queue.");
+                matchmaker.enqueue(player);
+                matchmaker.enqueue(opponent);
+                return;
+            }
+
+            // Recorded before the shard tells the clients, so their first getShard succeeds
+            gameShards.put(gameId, shard);
+            playerGames.put(player.getUsername(), gameId);
+            playerGames.put(opponent.getUsername(), gameId);
+            try {
+                shard.startGame(gameId, player.getUsername(), player.getClient(), player.getPoints(),
+                        opponent.getUsername(), opponent.getClient(), opponent.getPoints());
+                System.out.printf("Matched %s with %s on shard %s. Queue depth %d.%n",
+                        player, opponent, ring.nameOf(shard), matchmaker.getQueueDepth());
+                return;
+            } catch (ServerException e) {
+                // The shard is up but refused the pair, so try them again later
+                System.err.println("Shard refused game " + gameId + ": " + e.getCause().getMessage());
+                forgetGame(gameId, player, opponent);
+                matchmaker.enqueue(player);
+                matchmaker.enqueue(opponent);
+                return;
+            } catch (RemoteException e) {
+                String name = ring.nameOf(shard);
+                System.err.println("Shard " + name + " is unreachable and leaves the ring: " + e.getMessage());
+                forgetGame(gameId, player, opponent);
+                ring.remove(name, shard);
+                forgetShard(shard);
+            }
+        }
+    }
+
+    private void forgetGame(GameId gameId, Player player, Player opponent) {
+        gameShards.remove(gameId);
+        playerGames.remove(player.getUsername(), gameId);
+        playerGames.remove(opponent.getUsername(), gameId);
+    }
+
+    /**
+     * Forgets the games running on a shard that has left the ring. Their players find
+     * no game when they reconnect and go back in the queue.
+     */
+    private void forgetShard(ShardInterface shard) {
+        Set<GameId> lostGames = new HashSet<>();
+        gameShards.entrySet().removeIf(entry -> entry.getValue() == shard && lostGames.add(entry.getKey()));
+        Set<String> lostPlayers = new HashSet<>();
+        playerGames.entrySet().removeIf(entry -> lostGames.contains(entry.getValue()) && lostPlayers.add(entry.getKey()));
+        for (String username : lostPlayers) {
+            evictIfIdle(username);
+        }
+        if (!lostGames.isEmpty()) {
+            System.err.println(lostGames.size() + " game(s) were lost with the shard.");
+        }
+    }
+
+    @Override
+    public void registerPlayer(String username, ClientInterface client) throws RemoteException {
+        failureDetector.heartbeat(username);
+
+        Player player;
+        try {
+            player = allPlayers.computeIfAbsent(username, name -> loadPlayer(name, client));
+        } catch (IllegalArgumentException e) {
+            throw new RemoteException(e.getMessage());
+        }
+        player.setClient(client);
+
+        matchmaker.enqueue(player);
+        // The end of the player's last game may have evicted them in the meantime
+        allPlayers.putIfAbsent(username, player);
+        GameUpdate waiting = GameUpdate.status(null, 0, false, GameStatus.FINDING_PLAYERS, false);
+        dispatcher.dispatch(player, c -> c.applyUpdate(waiting));
+    }
+
+    private Player loadPlayer(String username, ClientInterface client) {
+        PlayerStore.Record record = playerStore.find(username);
+        if (record == null) {
+            record = playerStore.create(username);
+            rankIndex.add(0);
+        }
+        return new Player(username, client, record, rankIndex);
+    }
+
+    private void cancelWaiting(String username) {
+        failureDetector.reset(username);
+        Player player = allPlayers.get(username);
+        if (player != null && matchmaker.cancel(player)) {
+            allPlayers.remove(username, player);
+        }
+    }
+
+    private void handleCallbackFailure(Player player, ClientInterface client, RemoteException e) {
+        System.err.println("Callback to " + player.getUsername() + " failed: " + e.getMessage());
+        if (player.getClient() == client) {
+            matchmaker.cancel(player);
+        }
+    }
+
+    /**
+     * @return The shard owning the game, or null if the router does not know it.
+     */
+    private ShardInterface findShard(GameId gameId) {
+        return gameId == null ? null : gameShards.get(gameId);
+    }
+
+    @Override
+    public void makeMove(GameId gameId, String username, int row, int col) throws RemoteException {
+        ShardInterface shard = findShard(gameId);
+        if (shard != null) {
+            shard.makeMove(gameId, username, row, col);
+        }
+    }
+
+    @Override
+    public void sendChatMessage(GameId gameId, String username, String message) throws RemoteException {
+        ShardInterface shard = findShard(gameId);
+        if (shard != null) {
+            shard.sendChatMessage(gameId, username, message);
+        }
+    }
+
+    @Override
+    public void quitGame(GameId gameId, String username) throws RemoteException {
+        if (gameId == null) {
+            cancelWaiting(username);
+            return;
+        }
+        ShardInterface shard = findShard(gameId);
+        if (shard != null) {
+            shard.quitGame(gameId, username);
+        }
+    }
+
+    @Override
+    public void handleClientDisconnect(GameId gameId, String username) throws RemoteException {
+        if (gameId == null) {
+            cancelWaiting(username);
+            return;
+        }
+        ShardInterface shard = findShard(gameId);
+        if (shard != null) {
+            shard.handleClientDisconnect(gameId, username);
+        }
+    }
+
+    @Override
+    public void handleClientReconnect(String username, ClientInterface client) throws RemoteException {
+        failureDetector.reset(username);
+        failureDetector.heartbeat(username);
+
+        // A player with a running game goes back to its shard, anyone else back in the queue
+        GameId gameId = playerGames.get(username);
+        ShardInterface shard = findShard(gameId);
+        if (shard != null) {
+            try {
+                if (shard.resumePlayer(username, client)) {
+                    return;
+                }
+            } catch (RemoteException e) {
+                System.err.println("Failed to resume " + username + " on their shard: " + e.getMessage());
+            }
+        }
+        registerPlayer(username, client);
+    }
+
+    @Override
+    public void requestSnapshot(GameId gameId, String username) throws RemoteException {
+        ShardInterface shard = findShard(gameId);
+        if (shard != null) {
+            shard.requestSnapshot(gameId, username);
+        }
+    }
+
+    @Override
+    public Board getBoard(GameId gameId) throws RemoteException {
+        ShardInterface shard = findShard(gameId);
+        if (shard == null) {
+            throw new IllegalStateException("No active game found for the provided Game ID: " + gameId);
+        }
+        return shard.getBoard(gameId);
+    }
+
+    @Override
+    public void heartbeat(String username) {
+        failureDetector.heartbeat(username);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java GameRouter <ip> <port>");
+            return;
+        }
+
+        String ip = args[0];
+        int port;
+        try {
+            port = Integer.parseInt(args[1]);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid port number. Please ensure the port is a valid integer.");
+            return;
+        }
+
+        try {
+            System.setProperty("java.rmi.server.hostname", ip);
+            // A shard that hangs must not stall matchmaking for everyone else
+            if (System.getProperty("sun.rmi.transport.tcp.responseTimeout") == null) {
+                System.setProperty("sun.rmi.transport.tcp.responseTimeout", "5000");
+            }
+            Registry registry = LocateRegistry.createRegistry(port);
+
+            Path dataDir = Paths.get(System.getProperty("tictactoe.dataDir", "data"));
+            PlayerStore playerStore = PlayerStore.open(dataDir);
+            Runtime.getRuntime().addShutdownHook(new Thread(playerStore::flush));
+
+            GameRouter router = new GameRouter(playerStore);
+            router.startMatchmaking();
+            registry.bind("GameServer", router);
+
+            System.out.println("TicTacToe router is running on " + ip + ":" + port);
+        } catch (AlreadyBoundException e) {
+            System.err.println("The router is already bound: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Failed to initialize the router: " + e.getMessage());
+        }
+    }
+}
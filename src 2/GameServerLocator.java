@@ -0,0 +1,35 @@
+// Shaolong Xu 1067946
+
+import java.rmi.RemoteException;
+
+/**
+ * Picks the server a client should call for its current game. Against a plain
+ * server that is always the server itself; behind a {@link RouterInterface} it is
+ * the shard owning the game, looked up once per game.
+ */
+public class GameServerLocator {
+    private final ServerInterface entry;
+    private GameId gameId;
+    private ServerInterface owner;
+
+    public GameServerLocator(ServerInterface entry) {
+        this.entry = entry;
+    }
+
+    public ServerInterface getEntry() { return entry; }
+
+    /**
+     * @param gameId The client's current game, or null outside a game.
+     * @return The server to send calls about that game to.
+     */
+    public synchronized ServerInterface forGame(GameId gameId) throws RemoteException {
+        if (gameId == null || !(entry instanceof RouterInterface)) {
+            return entry;
+        }
+        if (!gameId.equals(this.gameId)) {
+            owner = ((RouterInterface) entry).getShard(gameId);
+            this.gameId = gameId;
+        }
+        return owner;
+    }
+}
@@ -1,53 +1,217 @@
 // Shaolong Xu 1067946
 
+import java.util.Arrays;
 import java.util.UUID;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
+/**
+ * One game on a square board of any size, won by the first player to get
+ * {@code winLength} symbols in a row. Player 1 plays 'X' and moves first.
+ * Each symbol's cells are kept as a bit set, numbered row * size + col, and a move
+ * is checked for a win by walking only the four lines through it, at most
+ * {@code winLength - 1} cells each way, so a move costs the same on any board.
+ */
 public class GameSession {
+    public static final int CLASSIC_SIZE = 3;
+    // Rows and columns travel as signed bytes
+    public static final int MAX_SIZE = 127;
+
+    // Winning lines of the classic board as 9-bit masks over cells numbered row * 3 + col
+    private static final int[] WIN_LINES = {
+            0b000000111, 0b000111000, 0b111000000, // rows
+            0b001001001, 0b010010010, 0b100100100, // columns
+            0b100010001, 0b001010100               // diagonals
+    };
+    // Row and column steps of the four line directions: across, down and both diagonals
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
     private  Player player1, player2, currentPlayer;
-    private final char[][] board = new char[3][3];
+    private final int size, winLength;
+    private final long[] xBits, oBits;
+    private int moveSeq; // Number of moves made, tagged on every update sent to clients
+    private short[] moves; // Cells played in order, grown as the game goes on
     private final UUID gameId;
-    private final List<String> chatMessages = new ArrayList<>();
+    private final ChatHistory chatHistory = new ChatHistory(10);
 
     public GameSession(Player player1, Player player2) {
+        this(UUID.randomUUID(), player1, player2);
+    }
+
+    /**
+     * Recreates a classic 3x3 game under an existing ID, as when it is recovered from the journal.
+     */
+    public GameSession(UUID gameId, Player player1, Player player2) {
+        this(gameId, player1, player2, CLASSIC_SIZE, CLASSIC_SIZE);
+    }
+
+    /**
+     * @param size      The number of rows and columns.
+     * @param winLength How many symbols in a row win the game.
+     */
+    public GameSession(UUID gameId, Player player1, Player player2, int size, int winLength) {
+        checkShape(size, winLength);
         this.player1 = player1;
         this.player2 = player2;
         this.currentPlayer = player1; // Player1 starts by default
-        this.gameId = UUID.randomUUID();
+        this.gameId = gameId;
+        this.size = size;
+        this.winLength = winLength;
+        this.xBits = new long[(size * size + 63) >>> 6];
+        this.oBits = new long[xBits.length];
+        this.moves = new short[Math.min(size * size, 16)];
+    }
+
+    /**
+     * @throws IllegalArgumentException if no game can be played with the given size and win length.
+     */
+    public static void checkShape(int size, int winLength) {
+        if (size < CLASSIC_SIZE || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Board size must be between " + CLASSIC_SIZE + " and " + MAX_SIZE + ": " + size);
+        }
+        if (winLength < CLASSIC_SIZE || winLength > size) {
+            throw new IllegalArgumentException("Win length must be between " + CLASSIC_SIZE + " and the board size: " + winLength);
+        }
     }
 
     public boolean isDraw() {
-        for (char[] row : board) {
-            for (char cell : row) {
-                if (cell == '\0') return false;
+        return moveSeq == size * size;
+    }
+
+    public int addChatMessage(String message) {
+        return chatHistory.append(message);
+    }
+    public boolean isWinningMove(int row, int col) {
+        // Only the symbol occupying the cell can complete a line through it
+        int cell = row * size + col;
+        return isSet(xBits, cell) ? isWinningMove(row, col, 'X')
+                : isSet(oBits, cell) && isWinningMove(row, col, 'O');
+    }
+
+    /**
+     * Checks a move before or after it is made; the cell itself is taken to hold the symbol.
+     *
+     * @return true if the symbol at the given cell completes a line.
+     */
+    public synchronized boolean isWinningMove(int row, int col, char symbol) {
+        long[] bits = symbol == 'X' ? xBits : oBits;
+        for (int[] direction : DIRECTIONS) {
+            int count = 1 + run(bits, row, col, direction[0], direction[1])
+                    + run(bits, row, col, -direction[0], -direction[1]);
+            if (count >= winLength) {
+                return true;
             }
         }
-        return true;
+        return false;
     }
 
-    public void addChatMessage(String message) {
-        if (chatMessages.size() >= 10) chatMessages.remove(0);
-        chatMessages.add(message);
+    // Counts the symbol's cells in a row from the given cell, not including it, stopping at winLength - 1
+    private int run(long[] bits, int row, int col, int rowStep, int colStep) {
+        int count = 0;
+        int r = row + rowStep;
+        int c = col + colStep;
+        while (count < winLength - 1 && r >= 0 && r < size && c >= 0 && c < size && isSet(bits, r * size + c)) {
+            count++;
+            r += rowStep;
+            c += colStep;
+        }
+        return count;
     }
-    public boolean isWinningMove(int row, int col) {
-        return (board[row][0] == board[row][1] && board[row][1] == board[row][2]) ||
-                (board[0][col] == board[1][col] && board[1][col] == board[2][col]) ||
-                (board[0][0] == board[1][1] && board[1][1] == board[2][2] && board[0][0] != '\0') ||
-                (board[0][2] == board[1][1] && board[1][1] == board[2][0] && board[0][2] != '\0');
+
+    private static boolean isSet(long[] bits, int cell) {
+        return (bits[cell >>> 6] & 1L << cell) != 0;
     }
 
-    public synchronized boolean makeMove(int row, int col, char symbol) {
-        if (board[row][col] == '\0') {
-            board[row][col] = symbol;
-            currentPlayer = (currentPlayer == player1) ? player2 : player1; // Switch turn
-            return true;
+    /**
+     * @param mask The cells held by one symbol on the classic board, as a 9-bit mask.
+     * @return true if those cells complete a line.
+     */
+    static boolean hasLine(int mask) {
+        for (int line : WIN_LINES) {
+            if ((mask & line) == line) return true;
         }
         return false;
     }
 
+    /**
+     * @return true if the cell is on the board and empty.
+     */
+    public synchronized boolean isFree(int row, int col) {
+        if (row < 0 || row >= size || col < 0 || col >= size) {
+            return false;
+        }
+        int cell = row * size + col;
+        return !isSet(xBits, cell) && !isSet(oBits, cell);
+    }
+
+    /**
+     * @return true if the next move fills the board.
+     */
+    public boolean isLastMove() {
+        return moveSeq + 1 == size * size;
+    }
+
+    public synchronized boolean makeMove(int row, int col, char symbol) {
+        if (!isFree(row, col)) {
+            return false;
+        }
+        int cell = row * size + col;
+        long[] bits = symbol == 'X' ? xBits : oBits;
+        bits[cell >>> 6] |= 1L << cell;
+        if (moveSeq == moves.length) {
+            moves = Arrays.copyOf(moves, Math.min(moves.length * 2, size * size));
+        }
+        moves[moveSeq++] = (short) cell;
+        currentPlayer = (currentPlayer == player1) ? player2 : player1; // Switch turn
+        return true;
+    }
+
+    /**
+     * Picks the move played for a player whose time has run out: the best move from
+     * {@link PerfectPlay} on the classic board, otherwise a random free cell. Random
+     * cells are tried first, so a mostly empty board is never scanned.
+     *
+     * @return The cell to play, numbered row * size + col, or -1 if the board is full.
+     */
+    public synchronized int pickTimeoutMove(Random random) {
+        if (size == CLASSIC_SIZE) {
+            // All nine cells sit in the first word
+            return PerfectPlay.bestMove((int) xBits[0], (int) oBits[0]);
+        }
+        int cells = size * size;
+        for (int attempt = 0; attempt < 8; attempt++) {
+            int cell = random.nextInt(cells);
+            if (!isSet(xBits, cell) && !isSet(oBits, cell)) {
+                return cell;
+            }
+        }
+        int start = random.nextInt(cells);
+        for (int i = 0; i < cells; i++) {
+            int cell = (start + i) % cells;
+            if (!isSet(xBits, cell) && !isSet(oBits, cell)) {
+                return cell;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Puts the board, turn and chat back to a saved state, as when a game is loaded from a snapshot.
+     *
+     * @param moves The cells played, in order; 'X' made the first move.
+     */
+    public synchronized void restore(short[] moves, boolean player1ToMove, int chatFirstIndex, List<String> chat) {
+        for (int move = 0; move < moves.length; move++) {
+            int cell = moves[move];
+            makeMove(cell / size, cell % size, move % 2 == 0 ? 'X' : 'O');
+        }
+        this.currentPlayer = player1ToMove ? player1 : player2;
+        chatHistory.restore(chatFirstIndex, chat);
+    }
+
     // Getters and Setters
-    public List<String> getChatMessages() { return chatMessages; }
+    public List<String> getChatMessages() { return chatHistory.getMessages(); }
+    public ChatHistory getChatHistory() { return chatHistory; }
 
     public Player getPlayerByUsername(String username) {
         return player1.getUsername().equals(username) ? player1 : player2;
@@ -59,7 +223,27 @@ public class GameSession {
     public UUID getGameId() { return gameId; }
     public Player getPlayer1() { return player1; }
     public Player getPlayer2() { return player2; }
-    public char[][] getBoard() { return board; }
+    public int getSize() { return size; }
+    public int getWinLength() { return winLength; }
+    public int getMoveSeq() { return moveSeq; }
+
+    /**
+     * @return A copy of the cells played so far, in order.
+     */
+    public short[] getMoves() { return Arrays.copyOf(moves, moveSeq); }
+
+    /**
+     * Captures the board for clients as the cells played so far, so it costs the
+     * moves made rather than the board's area.
+     */
+    public synchronized Board getBoard() {
+        short[] played = getMoves();
+        byte[] symbols = new byte[moveSeq];
+        for (int move = 0; move < moveSeq; move++) {
+            symbols[move] = (byte) (isSet(xBits, played[move]) ? 'X' : 'O');
+        }
+        return new Board(size, played, symbols);
+    }
     public Player getCurrentPlayer() { return currentPlayer; }
 
     public void setPlayer(Player player) {
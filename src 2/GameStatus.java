@@ -0,0 +1,160 @@
+// Shaolong Xu 1067946
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A status or outcome line, sent as a code and its arguments and rendered by the client.
+ * The server never formats these strings, and an update carries a byte and a name
+ * instead of the whole sentence.
+ */
+public final class GameStatus {
+
+    public enum Code {
+        FINDING_PLAYERS,
+        GAME_STARTED, // Player to move first, with rank and symbol
+        TURN,         // Player to move, with rank and symbol
+        WIN,          // Winner's username
+        DRAW,
+        OPPONENT_LEFT,
+        MATCH_DRAWN
+    }
+
+    private static final Code[] CODES = Code.values();
+
+    public static final GameStatus FINDING_PLAYERS = new GameStatus(Code.FINDING_PLAYERS, null, 0, '\0');
+    public static final GameStatus DRAW = new GameStatus(Code.DRAW, null, 0, '\0');
+    public static final GameStatus OPPONENT_LEFT = new GameStatus(Code.OPPONENT_LEFT, null, 0, '\0');
+    public static final GameStatus MATCH_DRAWN = new GameStatus(Code.MATCH_DRAWN, null, 0, '\0');
+
+    private final Code code;
+    private final String username;
+    private final int rank;
+    private final char symbol;
+
+    private GameStatus(Code code, String username, int rank, char symbol) {
+        this.code = code;
+        this.username = username;
+        this.rank = rank;
+        this.symbol = symbol;
+    }
+
+    public static GameStatus gameStarted(Player first) {
+        return new GameStatus(Code.GAME_STARTED, first.getUsername(), first.getRank(), first.getSymbol());
+    }
+
+    public static GameStatus turn(Player current) {
+        return new GameStatus(Code.TURN, current.getUsername(), current.getRank(), current.getSymbol());
+    }
+
+    public static GameStatus win(Player winner) {
+        return new GameStatus(Code.WIN, winner.getUsername(), 0, '\0');
+    }
+
+    /**
+     * Builds the status the server meant, as read back from the wire.
+     */
+    public static GameStatus of(Code code, String username, int rank, char symbol) {
+        switch (code) {
+            case FINDING_PLAYERS:
+                return FINDING_PLAYERS;
+            case DRAW:
+                return DRAW;
+            case OPPONENT_LEFT:
+                return OPPONENT_LEFT;
+            case MATCH_DRAWN:
+                return MATCH_DRAWN;
+            default:
+                return new GameStatus(code, username, rank, symbol);
+        }
+    }
+
+    public Code getCode() { return code; }
+    public String getUsername() { return username; }
+    public int getRank() { return rank; }
+    public char getSymbol() { return symbol; }
+
+    /**
+     * Whether a code carries a player; the rank and symbol only matter to the turn codes.
+     */
+    public static boolean hasPlayer(Code code) {
+        return code == Code.GAME_STARTED || code == Code.TURN || code == Code.WIN;
+    }
+
+    public boolean hasPlayer() {
+        return hasPlayer(code);
+    }
+
+    /**
+     * @throws IllegalArgumentException If the byte read from the wire is not a code.
+     */
+    public static Code codeOf(int ordinal) {
+        if (ordinal < 0 || ordinal >= CODES.length) {
+            throw new IllegalArgumentException("Unknown status code " + ordinal);
+        }
+        return CODES[ordinal];
+    }
+
+    /**
+     * @return The line to show the player.
+     */
+    public String render() {
+        switch (code) {
+            case FINDING_PLAYERS:
+                return "Finding Players";
+            case GAME_STARTED:
+                String first = "Rank #" + rank + " " + username;
+                return "Welcome to Tic-Tac-Toe!" + first + ", you are playing as '" + symbol + "', It's "
+                        + first + "'s turn.";
+            case TURN:
+                return "It's Rank #" + rank + " " + username + "'s turn (" + symbol + ").";
+            case WIN:
+                return username + " wins!";
+            case DRAW:
+                return "The game is a draw!";
+            case OPPONENT_LEFT:
+                return "Opponent has left the game. You win!";
+            case MATCH_DRAWN:
+                return "Match Drawn";
+            default:
+                throw new IllegalStateException("Unknown status " + code);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return render();
+    }
+
+    /**
+     * @return The number of bytes {@link #write(ByteBuffer, GameStatus)} takes.
+     */
+    static int encodedSize(GameStatus status) {
+        return status.hasPlayer() ? 8 + status.username.getBytes(StandardCharsets.UTF_8).length : 1;
+    }
+
+    /**
+     * Writes a status as its code and, for codes with a player, the username as UTF-8
+     * behind an unsigned short length, the rank and the symbol.
+     */
+    static void write(ByteBuffer out, GameStatus status) {
+        out.put((byte) status.code.ordinal());
+        if (status.hasPlayer()) {
+            byte[] name = status.username.getBytes(StandardCharsets.UTF_8);
+            out.putShort((short) name.length).put(name);
+            out.putInt(status.rank);
+            out.put((byte) status.symbol);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException If the code read is not a known one.
+     */
+    static GameStatus read(ByteBuffer in) {
+        Code code = codeOf(in.get() & 0xFF);
+        if (hasPlayer(code)) {
+            return of(code, WireProtocol.getString(in), in.getInt(), (char) (in.get() & 0xFF));
+        }
+        return of(code, null, 0, '\0');
+    }
+}
@@ -0,0 +1,208 @@
+// Shaolong Xu 1067946
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
+
+/**
+ * Everything a client needs to redraw after a game event, sent as one remote call.
+ * Moves are sent as deltas tagged with the game's move sequence number; the full
+ * board is only sent when a client has missed a move or is rejoining a game.
+ * The update writes itself field by field behind a flags byte, so optional parts
+ * cost nothing on the wire; RMI and the binary protocol carry the same bytes.
+ * While the server runs a turn clock, updates in a game carry the time left for
+ * the current move.
+ */
+public class GameUpdate implements Externalizable {
+    private static final long serialVersionUID = 6L;
+
+    private static final byte NO_MOVE = -1;
+
+    // Bits of the flags byte that starts every encoded update
+    static final int HAS_GAME = 1;
+    static final int HAS_BOARD = 1 << 1;
+    static final int HAS_MOVE = 1 << 2;
+    static final int YOUR_TURN = 1 << 3;
+    static final int HAS_STATUS = 1 << 4;
+    static final int GAME_OVER = 1 << 5;
+    static final int HAS_CLOCK = 1 << 6;
+
+    private GameId gameId;
+    private int seq;
+    private Board board;
+    private byte row = NO_MOVE, col = NO_MOVE;
+    private char symbol;
+    private boolean yourTurn;
+    private GameStatus status;
+    private boolean gameOver;
+    private int turnMillis; // Time left for the current move, or 0 without a clock
+
+    /**
+     * For deserialization only.
+     */
+    public GameUpdate() {
+    }
+
+    private GameUpdate(GameId gameId, int seq, Board board, int row, int col, char symbol,
+                       boolean yourTurn, GameStatus status, boolean gameOver, int turnMillis) {
+        this.gameId = gameId;
+        this.seq = seq;
+        this.board = board;
+        this.row = (byte) row;
+        this.col = (byte) col;
+        this.symbol = symbol;
+        this.yourTurn = yourTurn;
+        this.status = status;
+        this.gameOver = gameOver;
+        this.turnMillis = turnMillis;
+    }
+
+    /**
+     * An update that leaves the board alone, e.g. a game start, a quit or a waiting message.
+     *
+     * @param gameId   The game the update belongs to, or null while waiting for an opponent.
+     * @param seq      The number of moves made in the game so far.
+     * @param yourTurn Whether the receiving player moves next.
+     * @param status   The status line to show.
+     * @param gameOver Whether the status is the game's result.
+     */
+    public static GameUpdate status(GameId gameId, int seq, boolean yourTurn, GameStatus status, boolean gameOver) {
+        return new GameUpdate(gameId, seq, null, NO_MOVE, NO_MOVE, '\0', yourTurn, status, gameOver, 0);
+    }
+
+    /**
+     * An update carrying the single move that took the game to sequence number {@code seq}.
+     */
+    public static GameUpdate move(GameId gameId, int seq, int row, int col, char symbol,
+                                  boolean yourTurn, GameStatus status, boolean gameOver) {
+        return new GameUpdate(gameId, seq, null, row, col, symbol, yourTurn, status, gameOver, 0);
+    }
+
+    /**
+     * An update carrying the whole board as of sequence number {@code seq}.
+     * A null status leaves the client's status line unchanged.
+     */
+    public static GameUpdate snapshot(GameId gameId, int seq, Board board, boolean yourTurn, GameStatus status) {
+        return new GameUpdate(gameId, seq, board, NO_MOVE, NO_MOVE, '\0', yourTurn, status, false, 0);
+    }
+
+    /**
+     * @param turnMillis The time left for the current move, or 0 if the move is not timed.
+     * @return A copy of this update carrying the time left.
+     */
+    public GameUpdate withTurnMillis(int turnMillis) {
+        return new GameUpdate(gameId, seq, board, row, col, symbol, yourTurn, status, gameOver, turnMillis);
+    }
+
+    /**
+     * @return The number of bytes {@link #write(ByteBuffer)} takes.
+     */
+    int encodedSize() {
+        return 1 + (gameId != null ? 16 : 0) + 4
+                + (board != null ? board.encodedSize() : 0)
+                + (row != NO_MOVE ? 3 : 0)
+                + (status != null ? GameStatus.encodedSize(status) : 0)
+                + (turnMillis > 0 ? 4 : 0);
+    }
+
+    /**
+     * Writes the update behind its flags byte. The same bytes travel over RMI and in
+     * {@link WireProtocol} frames.
+     */
+    void write(ByteBuffer out) {
+        int flags = (gameId != null ? HAS_GAME : 0)
+                | (board != null ? HAS_BOARD : 0)
+                | (row != NO_MOVE ? HAS_MOVE : 0)
+                | (yourTurn ? YOUR_TURN : 0)
+                | (status != null ? HAS_STATUS : 0)
+                | (gameOver ? GAME_OVER : 0)
+                | (turnMillis > 0 ? HAS_CLOCK : 0);
+        out.put((byte) flags);
+        if (gameId != null) {
+            out.putLong(gameId.getMostSigBits());
+            out.putLong(gameId.getLeastSigBits());
+        }
+        out.putInt(seq);
+        if (board != null) {
+            board.write(out);
+        }
+        if (row != NO_MOVE) {
+            out.put(row).put(col).put((byte) symbol);
+        }
+        if (status != null) {
+            GameStatus.write(out, status);
+        }
+        if (turnMillis > 0) {
+            out.putInt(turnMillis);
+        }
+    }
+
+    /**
+     * Reads an update written by {@link #write(ByteBuffer)}.
+     *
+     * @throws java.nio.BufferUnderflowException If the update is cut short.
+     * @throws IllegalArgumentException         If it holds an unknown status code.
+     */
+    static GameUpdate read(ByteBuffer in) {
+        GameUpdate update = new GameUpdate();
+        update.readFields(in);
+        return update;
+    }
+
+    private void readFields(ByteBuffer in) {
+        int flags = in.get() & 0xFF;
+        gameId = (flags & HAS_GAME) != 0 ? GameId.of(in.getLong(), in.getLong()) : null;
+        seq = in.getInt();
+        board = (flags & HAS_BOARD) != 0 ? Board.read(in) : null;
+        if ((flags & HAS_MOVE) != 0) {
+            row = in.get();
+            col = in.get();
+            symbol = (char) (in.get() & 0xFF);
+        }
+        yourTurn = (flags & YOUR_TURN) != 0;
+        status = (flags & HAS_STATUS) != 0 ? GameStatus.read(in) : null;
+        gameOver = (flags & GAME_OVER) != 0;
+        turnMillis = (flags & HAS_CLOCK) != 0 ? in.getInt() : 0;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize());
+        write(buffer);
+        out.writeInt(buffer.capacity());
+        out.write(buffer.array());
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        int length = in.readInt();
+        if (length <= 0 || length > WireProtocol.MAX_FRAME) {
+            throw new IOException("Bad game update length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        try {
+            readFields(ByteBuffer.wrap(bytes));
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed game update: " + e, e);
+        }
+    }
+
+    // Getters
+    public GameId getGameId() { return gameId; }
+    public int getSeq() { return seq; }
+    public char[][] getBoard() { return board == null ? null : board.getCells(); }
+    public boolean isSnapshot() { return board != null; }
+    public boolean hasMove() { return row != NO_MOVE; }
+    public int getRow() { return row; }
+    public int getCol() { return col; }
+    public char getSymbol() { return symbol; }
+    public boolean isYourTurn() { return yourTurn; }
+    public GameStatus getStatus() { return status; }
+    public GameStatus getOutcome() { return gameOver ? status : null; }
+    public boolean isGameOver() { return gameOver; }
+    public boolean hasTurnClock() { return turnMillis > 0; }
+    public int getTurnMillis() { return turnMillis; }
+}
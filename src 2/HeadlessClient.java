@@ -0,0 +1,147 @@
+// Shaolong Xu 1067946
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A client without a GUI, for load testing. It keeps the same local board and
+ * sequence tracking as {@link Client} and reports game events to a listener
+ * instead of drawing them.
+ */
+public class HeadlessClient extends UnicastRemoteObject implements ClientInterface {
+    private static final long serialVersionUID = 1L;
+
+    public interface Listener {
+        /** Called when it becomes this client's turn. */
+        void onTurn(HeadlessClient client);
+
+        /** Called when a move update is applied to the local board. */
+        void onMove(HeadlessClient client, int seq);
+
+        /** Called when the game ends. */
+        void onGameOver(HeadlessClient client, GameStatus outcome);
+    }
+
+    private final String username;
+    private final GameServerLocator servers;
+    private final Listener listener;
+    private char[][] board = new char[GameSession.CLASSIC_SIZE][GameSession.CLASSIC_SIZE]; // Sized by each game's first snapshot
+    private volatile long lastContact; // Last time a call to or from the server succeeded
+    private GameId gameId;
+    private boolean turn;
+    private int lastSeq; // Move sequence number the local board reflects
+    private int nextChatIndex; // Index of the next chat message we expect
+
+    public HeadlessClient(String username, GameServerLocator servers, Listener listener) throws RemoteException {
+        this.username = username;
+        this.servers = servers;
+        this.listener = listener;
+        markContact();
+    }
+
+    @Override
+    public synchronized void applyUpdate(GameUpdate update) throws RemoteException {
+        markContact();
+
+        // A new game starts from an empty board
+        if (update.getGameId() != null && !update.getGameId().equals(gameId)) {
+            for (char[] row : board) {
+                Arrays.fill(row, '\0');
+            }
+            lastSeq = 0;
+            nextChatIndex = 0;
+        }
+
+        if (update.isSnapshot()) {
+            board = update.getBoard();
+            lastSeq = update.getSeq();
+        } else if (update.hasMove() && update.getSeq() == lastSeq + 1
+                && update.getRow() < board.length && update.getCol() < board[0].length) {
+            board[update.getRow()][update.getCol()] = update.getSymbol();
+            lastSeq = update.getSeq();
+            listener.onMove(this, lastSeq);
+        } else if (update.getSeq() > lastSeq && !update.isGameOver()) {
+            // We missed at least one move, ask for the whole board
+            servers.forGame(update.getGameId()).requestSnapshot(update.getGameId(), username);
+        }
+
+        if (update.isGameOver()) {
+            turn = false;
+            gameId = null;
+            listener.onGameOver(this, update.getOutcome());
+            return;
+        }
+
+        turn = update.isYourTurn();
+        gameId = update.getGameId();
+        if (turn && gameId != null) {
+            listener.onTurn(this);
+        }
+    }
+
+    @Override
+    public void freeze() {
+        markContact();
+    }
+
+    @Override
+    public synchronized void receiveChatMessage(int index, String message) {
+        markContact();
+        if (index >= nextChatIndex) {
+            nextChatIndex = index + 1;
+        }
+    }
+
+    @Override
+    public synchronized void receiveChatHistory(List<String> messages, int nextIndex) {
+        markContact();
+        nextChatIndex = nextIndex;
+    }
+
+    @Override
+    public void heartbeat() {
+        markContact();
+    }
+
+    /**
+     * Picks a random empty cell on the local board.
+     *
+     * @return The row and column, or null if the board is full or it is not our turn.
+     */
+    public synchronized int[] pickMove(Random random) {
+        if (!turn) {
+            return null;
+        }
+        int cols = board[0].length;
+        int cells = board.length * cols;
+        // Scan from a random cell, which costs little on a large, mostly empty board
+        int start = random.nextInt(cells);
+        for (int i = 0; i < cells; i++) {
+            int cell = (start + i) % cells;
+            if (board[cell / cols][cell % cols] == '\0') {
+                return new int[]{cell / cols, cell % cols};
+            }
+        }
+        return null;
+    }
+
+    public void markContact() {
+        lastContact = System.currentTimeMillis();
+    }
+
+    public long getLastContact() { return lastContact; }
+    public synchronized int getLastSeq() { return lastSeq; }
+
+    @Override
+    public synchronized GameId getGameId() {
+        return gameId;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+}
@@ -0,0 +1,100 @@
+// Shaolong Xu 1067946
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets.
+ * Values below 64 ns are counted exactly; above that every power of two is split
+ * into 32 buckets, so a reported percentile is within about 3% of the true value.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40; // About 18 minutes in nanoseconds; longer values are clamped
+    private static final int BUCKETS = bucketIndex(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one measurement.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() { return count.sum(); }
+    public long getMax(TimeUnit unit) { return unit.convert(max.get(), TimeUnit.NANOSECONDS); }
+
+    public double getMean(TimeUnit unit) {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n / unit.toNanos(1);
+    }
+
+    /**
+     * @param percentile The percentile to report, e.g. 99.9.
+     * @return The upper bound of the bucket holding that percentile, or 0 if nothing was recorded.
+     */
+    public double getPercentile(double percentile, TimeUnit unit) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return (double) Math.min(upperBound(i), max.get()) / unit.toNanos(1);
+            }
+        }
+        return (double) max.get() / unit.toNanos(1);
+    }
+
+    /**
+     * @return A one-line summary such as {@code p50=1.20ms p99=4.10ms p999=9.80ms max=12.00ms (n=1000)}.
+     */
+    public String summary() {
+        return String.format("p50=%.2fms p99=%.2fms p999=%.2fms max=%.2fms (n=%d)",
+                getPercentile(50, TimeUnit.MICROSECONDS) / 1000,
+                getPercentile(99, TimeUnit.MICROSECONDS) / 1000,
+                getPercentile(99.9, TimeUnit.MICROSECONDS) / 1000,
+                getMax(TimeUnit.MICROSECONDS) / 1000.0,
+                getCount());
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            exponent = MAX_EXPONENT;
+            value = (1L << (MAX_EXPONENT + 1)) - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return 2 * SUB_BUCKETS + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS
+                + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    private static long upperBound(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int offset = index - 2 * SUB_BUCKETS;
+        int exponent = offset / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        long mantissa = offset % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
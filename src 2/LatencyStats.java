@@ -0,0 +1,38 @@
+// Shaolong Xu 1067946
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summary of a {@link LatencyHistogram} as published over JMX, in milliseconds.
+ */
+public class LatencyStats {
+    private final long count;
+    private final double mean, p50, p99, p999, max;
+
+    @ConstructorProperties({"count", "mean", "p50", "p99", "p999", "max"})
+    public LatencyStats(long count, double mean, double p50, double p99, double p999, double max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    static LatencyStats of(LatencyHistogram histogram) {
+        return new LatencyStats(histogram.getCount(),
+                histogram.getMean(TimeUnit.NANOSECONDS) / 1e6,
+                histogram.getPercentile(50, TimeUnit.NANOSECONDS) / 1e6,
+                histogram.getPercentile(99, TimeUnit.NANOSECONDS) / 1e6,
+                histogram.getPercentile(99.9, TimeUnit.NANOSECONDS) / 1e6,
+                histogram.getMax(TimeUnit.NANOSECONDS) / 1e6);
+    }
+
+    public long getCount() { return count; }
+    public double getMean() { return mean; }
+    public double getP50() { return p50; }
+    public double getP99() { return p99; }
+    public double getP999() { return p999; }
+    public double getMax() { return max; }
+}
@@ -0,0 +1,269 @@
+// Shaolong Xu 1067946
+
+import java.io.IOException;
+import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a server with simulated players, each backed by a {@link HeadlessClient}.
+ * Players register, play random moves after an exponentially distributed think time,
+ * chat, and now and then drop their client and come back on a new one within the
+ * grace period. Throughput and the latency of {@code makeMove}, and of the update that
+ * delivers the move back to the player, are printed every five seconds and at the end.
+ * Run with {@code -Dtictactoe.transport=nio} to drive the binary protocol, with one
+ * connection per player, instead of RMI.
+ */
+public class LoadGenerator {
+    private static final long RECONNECT_DELAY_MILLIS = 5000;
+    private static final long REPORT_INTERVAL_MILLIS = 5000;
+
+    /**
+     * Opens the server interface a player talks through.
+     */
+    public interface Connector {
+        ServerInterface connect() throws IOException;
+    }
+
+    private final Connector connector;
+    private final long thinkMillis;
+    private final double chatRate;
+    private final double disconnectRate;
+    private final ScheduledExecutorService scheduler;
+    private final List<SimulatedPlayer> players = new ArrayList<>();
+
+    private final LatencyHistogram moveLatency = new LatencyHistogram();
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+    private final AtomicLong moves = new AtomicLong();
+    private final AtomicLong chats = new AtomicLong();
+    private final AtomicLong games = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    public LoadGenerator(Connector connector, int playerCount, long thinkMillis, double chatRate,
+                         double disconnectRate) {
+        this.connector = connector;
+        this.thinkMillis = thinkMillis;
+        this.chatRate = chatRate;
+        this.disconnectRate = disconnectRate;
+        // Calls to the server block, so the pool grows with the number of players
+        this.scheduler = new ScheduledThreadPoolExecutor(Math.max(4, Math.min(playerCount / 4, 256)), runnable -> {
+            Thread thread = new Thread(runnable, "load-player");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < playerCount; i++) {
+            players.add(new SimulatedPlayer("load" + i));
+        }
+    }
+
+    /**
+     * Runs the simulation for the given time, then prints a summary.
+     */
+    public void run(long seconds) throws InterruptedException {
+        long start = System.nanoTime();
+        for (SimulatedPlayer player : players) {
+            // Spread the arrivals over the first second
+            scheduler.schedule(player::register, ThreadLocalRandom.current().nextLong(1000), TimeUnit.MILLISECONDS);
+        }
+        scheduler.scheduleAtFixedRate(this::sendHeartbeats, 1000, 1000, TimeUnit.MILLISECONDS);
+
+        long lastMoves = 0;
+        long lastReport = start;
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < end) {
+            Thread.sleep(Math.min(REPORT_INTERVAL_MILLIS, TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()) + 1));
+            long now = System.nanoTime();
+            long total = moves.get();
+            System.out.printf("[%3ds] %.0f moves/s, makeMove %s%n",
+                    TimeUnit.NANOSECONDS.toSeconds(now - start),
+                    (total - lastMoves) / ((now - lastReport) / 1e9), moveLatency.summary());
+            lastMoves = total;
+            lastReport = now;
+        }
+        scheduler.shutdownNow();
+
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%nPlayers: %d, duration: %.1fs%n", players.size(), elapsed);
+        System.out.printf("Moves: %d (%.0f/s), games finished: %d, chats: %d, disconnects: %d, errors: %d%n",
+                moves.get(), moves.get() / elapsed, games.get(), chats.get(), disconnects.get(), errors.get());
+        System.out.println("makeMove latency:        " + moveLatency.summary());
+        System.out.println("Move delivery latency:   " + deliveryLatency.summary());
+    }
+
+    private void sendHeartbeats() {
+        long now = System.currentTimeMillis();
+        for (SimulatedPlayer player : players) {
+            HeadlessClient client = player.client;
+            // Regular traffic already tells the server we are alive, so only fill in the quiet gaps
+            if (client != null && now - client.getLastContact() >= 3000) {
+                try {
+                    player.servers.forGame(client.getGameId()).heartbeat(player.username);
+                    client.markContact();
+                } catch (RemoteException e) {
+                    errors.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private long thinkTime() {
+        // Exponential think times give a realistic mix of quick and slow moves
+        return (long) (-thinkMillis * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+    }
+
+    /**
+     * One simulated player. Its client is replaced when it disconnects and comes back.
+     */
+    private class SimulatedPlayer implements HeadlessClient.Listener {
+        private final String username;
+        private final Random random = new Random();
+        private volatile ServerInterface server;
+        private volatile GameServerLocator servers; // The owning shard of each game when behind a router
+        private volatile HeadlessClient client;
+        private boolean moveScheduled;
+        private int pendingSeq = -1; // Sequence number our last move should arrive with
+        private long pendingStart;
+
+        SimulatedPlayer(String username) {
+            this.username = username;
+        }
+
+        void register() {
+            try {
+                if (client == null) {
+                    server = connector.connect();
+                    servers = new GameServerLocator(server);
+                    client = new HeadlessClient(username, servers, this);
+                }
+                server.registerPlayer(username, client);
+            } catch (IOException e) {
+                errors.incrementAndGet();
+            }
+        }
+
+        @Override
+        public synchronized void onTurn(HeadlessClient from) {
+            if (from == client && !moveScheduled) {
+                moveScheduled = true;
+                scheduler.schedule(this::act, thinkTime(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public synchronized void onMove(HeadlessClient from, int seq) {
+            if (seq == pendingSeq) {
+                deliveryLatency.record(System.nanoTime() - pendingStart);
+                pendingSeq = -1;
+            }
+        }
+
+        @Override
+        public void onGameOver(HeadlessClient from, GameStatus outcome) {
+            if (from == client) {
+                games.incrementAndGet();
+                scheduler.schedule(this::register, thinkTime(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void act() {
+            HeadlessClient current = client;
+            synchronized (this) {
+                moveScheduled = false;
+            }
+            if (current == null) {
+                return;
+            }
+            GameId gameId = current.getGameId();
+            int[] move = current.pickMove(random);
+            if (gameId == null || move == null) {
+                return;
+            }
+
+            try {
+                if (random.nextDouble() < chatRate) {
+                    servers.forGame(gameId).sendChatMessage(gameId, username, "good luck from " + username);
+                    chats.incrementAndGet();
+                }
+                if (random.nextDouble() < disconnectRate) {
+                    disconnect(current, gameId);
+                    return;
+                }
+
+                synchronized (this) {
+                    pendingSeq = current.getLastSeq() + 1;
+                    pendingStart = System.nanoTime();
+                }
+                long start = System.nanoTime();
+                servers.forGame(gameId).makeMove(gameId, username, move[0], move[1]);
+                moveLatency.record(System.nanoTime() - start);
+                moves.incrementAndGet();
+                current.markContact();
+            } catch (RemoteException e) {
+                errors.incrementAndGet();
+            }
+        }
+
+        private void disconnect(HeadlessClient current, GameId gameId) throws RemoteException {
+            disconnects.incrementAndGet();
+            servers.forGame(gameId).handleClientDisconnect(gameId, username);
+            UnicastRemoteObject.unexportObject(current, true);
+            if (server instanceof NioServerConnection) {
+                ((NioServerConnection) server).close();
+            }
+            client = null;
+
+            // Come back on a new client well within the grace period
+            scheduler.schedule(() -> {
+                try {
+                    server = connector.connect();
+                    servers = new GameServerLocator(server);
+                    client = new HeadlessClient(username, servers, this);
+                    server.handleClientReconnect(username, client);
+                } catch (IOException e) {
+                    errors.incrementAndGet();
+                }
+            }, RECONNECT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.out.println("Usage: java LoadGenerator <server_ip> <server_port> <players> <seconds> "
+                    + "[think_ms=200] [chat_rate=0.05] [disconnect_rate=0.002]");
+            System.exit(1);
+        }
+
+        try {
+            Connector connector;
+            if ("nio".equals(System.getProperty("tictactoe.transport"))) {
+                connector = () -> NioServerConnection.connect(args[0], Integer.parseInt(args[1]));
+            } else {
+                ServerInterface server = (ServerInterface) Naming.lookup("rmi://" + args[0] + ":" + args[1] + "/GameServer");
+                connector = () -> server;
+            }
+            int players = Integer.parseInt(args[2]);
+            long seconds = Long.parseLong(args[3]);
+            long thinkMillis = args.length > 4 ? Long.parseLong(args[4]) : 200;
+            double chatRate = args.length > 5 ? Double.parseDouble(args[5]) : 0.05;
+            double disconnectRate = args.length > 6 ? Double.parseDouble(args[6]) : 0.002;
+
+            new LoadGenerator(connector, players, thinkMillis, chatRate, disconnectRate).run(seconds);
+            System.exit(0);
+        } catch (NumberFormatException e) {
+            System.out.println("Error: players, seconds, think time and rates must be numbers.");
+            System.exit(1);
+        } catch (Exception e) {
+            System.err.println("Load generator failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+// Shaolong Xu 1067946
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Pairs waiting players by points in periodic batches.
+ * Players are kept in buckets keyed by points; each round walks the buckets in
+ * order and pairs neighbours whose points are within a tolerance that widens
+ * the longer either of them has waited.
+ */
+public class MatchmakingEngine {
+
+    public interface MatchListener {
+        void onMatch(Player first, Player second);
+    }
+
+    public interface UnmatchedListener {
+        void onUnmatched(Player player);
+    }
+
+    private static class Ticket {
+        final Player player;
+        final int points;
+        final long enqueuedAt;
+
+        Ticket(Player player, long enqueuedAt) {
+            this.player = player;
+            this.points = player.getPoints();
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private final NavigableMap<Integer, Deque<Ticket>> buckets = new TreeMap<>();
+    private final Map<Player, Ticket> tickets = new HashMap<>();
+    private final int bucketWidth;
+    private final int baseTolerance;
+    private final int tolerancePerSecond;
+    private final Predicate<Player> isAlive;
+    private final MatchListener listener;
+
+    private final AtomicLong matchedPlayers = new AtomicLong();
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+    // Players handed to the fallback are kept out of the wait statistics, which describe real pairings
+    private final AtomicLong fallbackPlayers = new AtomicLong();
+
+    private long fallbackAfterMillis;
+    private UnmatchedListener fallback;
+
+    private Timer matchTimer;
+
+    /**
+     * @param bucketWidth        Points covered by each bucket.
+     * @param baseTolerance      Largest points difference accepted straight away.
+     * @param tolerancePerSecond How much the accepted difference grows per second of waiting.
+     * @param isAlive            Liveness check; players failing it are dropped from the queue.
+     * @param listener           Called outside the engine's lock for every pair formed.
+     */
+    public MatchmakingEngine(int bucketWidth, int baseTolerance, int tolerancePerSecond,
+                             Predicate<Player> isAlive, MatchListener listener) {
+        this.bucketWidth = bucketWidth;
+        this.baseTolerance = baseTolerance;
+        this.tolerancePerSecond = tolerancePerSecond;
+        this.isAlive = isAlive;
+        this.listener = listener;
+    }
+
+    /**
+     * Adds a player to the queue. Returns immediately; pairing happens on the next round.
+     */
+    public synchronized void enqueue(Player player) {
+        if (tickets.containsKey(player)) {
+            return;
+        }
+        Ticket ticket = new Ticket(player, System.currentTimeMillis());
+        tickets.put(player, ticket);
+        buckets.computeIfAbsent(ticket.points / bucketWidth, key -> new ArrayDeque<>()).add(ticket);
+    }
+
+    /**
+     * Removes a player who quit or disconnected while waiting.
+     *
+     * @return true if the player was in the queue.
+     */
+    public synchronized boolean cancel(Player player) {
+        Ticket ticket = tickets.remove(player);
+        if (ticket == null) {
+            return false;
+        }
+        int key = ticket.points / bucketWidth;
+        Deque<Ticket> bucket = buckets.get(key);
+        bucket.remove(ticket);
+        if (bucket.isEmpty()) {
+            buckets.remove(key);
+        }
+        return true;
+    }
+
+    /**
+     * Takes players who have waited this long without a partner out of the queue and
+     * hands them to the listener, outside the engine's lock, e.g. to give them a bot.
+     */
+    public synchronized void setFallback(long waitMillis, UnmatchedListener listener) {
+        this.fallbackAfterMillis = waitMillis;
+        this.fallback = listener;
+    }
+
+    /**
+     * @return true if the player is in the queue.
+     */
+    public synchronized boolean isWaiting(Player player) {
+        return tickets.containsKey(player);
+    }
+
+    public synchronized int getQueueDepth() {
+        return tickets.size();
+    }
+
+    public long getMatchedPlayers() { return matchedPlayers.get(); }
+    public long getMaxTimeToMatchMillis() { return maxWaitMillis.get(); }
+    public long getFallbackPlayers() { return fallbackPlayers.get(); }
+
+    public double getAverageTimeToMatchMillis() {
+        long count = matchedPlayers.get();
+        return count == 0 ? 0.0 : (double) totalWaitMillis.get() / count;
+    }
+
+    public void start(long intervalMillis) {
+        matchTimer = new Timer("matchmaking", true);
+        matchTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    runRound();
+                } catch (RuntimeException e) {
+                    System.err.println("Matchmaking round failed: " + e.getMessage());
+                }
+            }
+        }, intervalMillis, intervalMillis);
+    }
+
+    /**
+     * Forms as many pairs as the current tolerances allow and hands them to the listener.
+     */
+    public void runRound() {
+        long now = System.currentTimeMillis();
+        List<Ticket[]> pairs = new ArrayList<>();
+        List<Ticket> unmatched = new ArrayList<>();
+        UnmatchedListener fallback;
+
+        synchronized (this) {
+            Ticket pending = null;
+            Iterator<Deque<Ticket>> bucketIterator = buckets.values().iterator();
+            while (bucketIterator.hasNext()) {
+                Deque<Ticket> bucket = bucketIterator.next();
+                Iterator<Ticket> ticketIterator = bucket.iterator();
+                while (ticketIterator.hasNext()) {
+                    Ticket ticket = ticketIterator.next();
+                    if (!isAlive.test(ticket.player)) {
+                        ticketIterator.remove();
+                        tickets.remove(ticket.player);
+                        continue;
+                    }
+                    if (pending != null && ticket.points - pending.points <= tolerance(pending, ticket, now)) {
+                        pairs.add(new Ticket[]{pending, ticket});
+                        ticketIterator.remove();
+                        tickets.remove(ticket.player);
+                        pending = null;
+                    } else {
+                        pending = ticket;
+                    }
+                }
+                if (bucket.isEmpty()) {
+                    bucketIterator.remove();
+                }
+            }
+            // Partners were removed as they were paired; now take out the first half of each pair
+            for (Ticket[] pair : pairs) {
+                tickets.remove(pair[0].player);
+                Deque<Ticket> bucket = buckets.get(pair[0].points / bucketWidth);
+                if (bucket != null) {
+                    bucket.remove(pair[0]);
+                    if (bucket.isEmpty()) {
+                        buckets.remove(pair[0].points / bucketWidth);
+                    }
+                }
+            }
+
+            // Whoever is left and has waited too long goes to the fallback
+            fallback = this.fallback;
+            if (fallback != null) {
+                bucketIterator = buckets.values().iterator();
+                while (bucketIterator.hasNext()) {
+                    Deque<Ticket> bucket = bucketIterator.next();
+                    Iterator<Ticket> ticketIterator = bucket.iterator();
+                    while (ticketIterator.hasNext()) {
+                        Ticket ticket = ticketIterator.next();
+                        if (now - ticket.enqueuedAt >= fallbackAfterMillis) {
+                            unmatched.add(ticket);
+                            ticketIterator.remove();
+                            tickets.remove(ticket.player);
+                        }
+                    }
+                    if (bucket.isEmpty()) {
+                        bucketIterator.remove();
+                    }
+                }
+            }
+        }
+
+        for (Ticket[] pair : pairs) {
+            recordWait(now - pair[0].enqueuedAt);
+            recordWait(now - pair[1].enqueuedAt);
+            listener.onMatch(pair[0].player, pair[1].player);
+        }
+        for (Ticket ticket : unmatched) {
+            fallbackPlayers.incrementAndGet();
+            fallback.onUnmatched(ticket.player);
+        }
+    }
+
+    private int tolerance(Ticket first, Ticket second, long now) {
+        long longestWait = now - Math.min(first.enqueuedAt, second.enqueuedAt);
+        return baseTolerance + (int) (longestWait / 1000 * tolerancePerSecond);
+    }
+
+    private void recordWait(long waitMillis) {
+        matchedPlayers.incrementAndGet();
+        totalWaitMillis.addAndGet(waitMillis);
+        maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+    }
+}
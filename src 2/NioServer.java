@@ -0,0 +1,436 @@
+// Shaolong Xu 1067946
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.rmi.ConnectException;
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the game over the {@link WireProtocol} binary protocol, next to RMI.
+ * One selector thread owns every socket; decoded requests run on a fixed worker
+ * pool against the same {@link TicTacToeServer}, one request at a time per
+ * connection. Each connection stands in for the player's {@link ClientInterface},
+ * so callbacks become event frames on the same socket and the thread count does
+ * not grow with the number of players.
+ */
+public class NioServer {
+    private static final int READ_BUFFER_BYTES = 4096;
+    // A client this far behind on its events is not reading them, so it is dropped
+    private static final int MAX_PENDING_BYTES = 256 * 1024;
+    // Stop reading from a client that has this many requests waiting for a worker
+    private static final int MAX_QUEUED_REQUESTS = 64;
+
+    private final TicTacToeServer server;
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final ExecutorService workers;
+    private final Thread selectorThread;
+
+    private NioServer(TicTacToeServer server, ServerSocketChannel serverChannel, Selector selector, int workerThreads) {
+        this.server = server;
+        this.serverChannel = serverChannel;
+        this.selector = selector;
+        this.workers = Executors.newFixedThreadPool(workerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "nio-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.selectorThread = new Thread(this::runSelector, "nio-selector");
+        this.selectorThread.setDaemon(true);
+    }
+
+    /**
+     * Binds the listening socket; call {@link #start()} to begin accepting players.
+     *
+     * @param server        The game server the requests are applied to.
+     * @param address       The address to listen on.
+     * @param workerThreads The number of threads running requests.
+     */
+    public static NioServer open(TicTacToeServer server, InetSocketAddress address, int workerThreads)
+            throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 1024);
+        serverChannel.configureBlocking(false);
+        Selector selector = Selector.open();
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        return new NioServer(server, serverChannel, selector, workerThreads);
+    }
+
+    public void start() {
+        selectorThread.start();
+    }
+
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    /**
+     * Stops accepting players and closes every connection.
+     */
+    public void close() throws IOException {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection) {
+                ((Connection) key.attachment()).close();
+            }
+        }
+        selector.close();
+        serverChannel.close();
+        workers.shutdown();
+    }
+
+    private void runSelector() {
+        try {
+            while (selector.isOpen()) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    } catch (IOException e) {
+                        connection.close();
+                    }
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // Closed by close()
+        } catch (IOException e) {
+            System.err.println("Binary protocol server stopped: " + e.getMessage());
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(channel, key));
+        }
+    }
+
+    /**
+     * One client socket. Requests are queued and run in order by one worker at a time,
+     * the same way {@link CallbackDispatcher} delivers callbacks. Frames to the client
+     * are written straight away when the socket has room and are otherwise queued for
+     * the selector thread. A callback returns once its frame is handed to the socket,
+     * so the callback round trip reported for these players excludes the network.
+     */
+    private class Connection implements ClientInterface, Runnable {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+
+        // Guarded by this
+        private final Queue<ByteBuffer> outbound = new ArrayDeque<>();
+        private int pendingBytes;
+        private boolean closed;
+
+        // Guarded by requests
+        private final Queue<Runnable> requests = new ArrayDeque<>();
+        private boolean scheduled;
+        private boolean readPaused;
+
+        // Bound by REGISTER or RECONNECT, then used for every other request
+        private volatile String username;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        /**
+         * Reads what the socket has and queues every complete frame. Selector thread only.
+         */
+        void read() throws IOException {
+            if (channel.read(readBuffer) < 0) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            while (readBuffer.remaining() >= Integer.BYTES) {
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length < 1 || length > WireProtocol.MAX_FRAME) {
+                    throw new IOException("Bad frame length " + length);
+                }
+                if (readBuffer.remaining() < Integer.BYTES + length) {
+                    if (readBuffer.capacity() < Integer.BYTES + length) {
+                        // Keep the partial frame in a buffer big enough for all of it
+                        ByteBuffer larger = ByteBuffer.allocate(Integer.BYTES + length);
+                        larger.put(readBuffer);
+                        readBuffer = larger;
+                        return;
+                    }
+                    break;
+                }
+
+                readBuffer.getInt();
+                ByteBuffer frame = ByteBuffer.allocate(length);
+                int limit = readBuffer.limit();
+                readBuffer.limit(readBuffer.position() + length);
+                frame.put(readBuffer).flip();
+                readBuffer.limit(limit);
+                submit(() -> handle(frame));
+            }
+            readBuffer.compact();
+        }
+
+        private void submit(Runnable request) {
+            synchronized (requests) {
+                requests.add(request);
+                if (requests.size() >= MAX_QUEUED_REQUESTS && !readPaused) {
+                    readPaused = true;
+                    setReading(false);
+                }
+                if (!scheduled) {
+                    scheduled = true;
+                    workers.execute(this);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            Runnable next;
+            while ((next = pollRequest()) != null) {
+                next.run();
+            }
+        }
+
+        private Runnable pollRequest() {
+            synchronized (requests) {
+                Runnable next = requests.poll();
+                if (next == null) {
+                    scheduled = false;
+                }
+                if (readPaused && requests.size() < MAX_QUEUED_REQUESTS / 2) {
+                    readPaused = false;
+                    setReading(true);
+                }
+                return next;
+            }
+        }
+
+        private void setReading(boolean reading) {
+            try {
+                if (reading) {
+                    key.interestOpsOr(SelectionKey.OP_READ);
+                    selector.wakeup();
+                } else {
+                    key.interestOpsAnd(~SelectionKey.OP_READ);
+                }
+            } catch (CancelledKeyException e) {
+                // Closed meanwhile
+            }
+        }
+
+        private void handle(ByteBuffer frame) {
+            WireProtocol.FrameWriter reply;
+            byte opcode = frame.get();
+            try {
+                reply = apply(opcode, frame);
+            } catch (RemoteException e) {
+                reply = new WireProtocol.FrameWriter(WireProtocol.ERROR).putString(String.valueOf(e.getMessage()));
+            } catch (RuntimeException e) {
+                // Malformed payloads and the server's argument checks end up here
+                reply = new WireProtocol.FrameWriter(WireProtocol.ERROR).putString(e.toString());
+            }
+
+            try {
+                send(reply.finish());
+            } catch (RemoteException e) {
+                // The connection is gone; close() has already reported it
+            }
+        }
+
+        private WireProtocol.FrameWriter apply(byte opcode, ByteBuffer frame) throws RemoteException {
+            if (opcode == WireProtocol.REGISTER) {
+                username = WireProtocol.getString(frame);
+                server.registerPlayer(username, this);
+                return new WireProtocol.FrameWriter(WireProtocol.OK);
+            } else if (opcode == WireProtocol.RECONNECT) {
+                username = WireProtocol.getString(frame);
+                server.handleClientReconnect(username, this);
+                return new WireProtocol.FrameWriter(WireProtocol.OK);
+            }
+
+            String name = username;
+            if (name == null) {
+                throw new RemoteException("Register before sending request " + opcode);
+            }
+            switch (opcode) {
+                case WireProtocol.MOVE:
+                    server.makeMove(WireProtocol.getGameId(frame), name, frame.get(), frame.get());
+                    break;
+                case WireProtocol.CHAT:
+                    GameId gameId = WireProtocol.getGameId(frame);
+                    server.sendChatMessage(gameId, name, WireProtocol.getString(frame));
+                    break;
+                case WireProtocol.QUIT:
+                    server.quitGame(WireProtocol.getGameId(frame), name);
+                    break;
+                case WireProtocol.DISCONNECT:
+                    server.handleClientDisconnect(WireProtocol.getGameId(frame), name);
+                    break;
+                case WireProtocol.HEARTBEAT:
+                    server.heartbeat(name);
+                    break;
+                case WireProtocol.REQUEST_SNAPSHOT:
+                    server.requestSnapshot(WireProtocol.getGameId(frame), name);
+                    break;
+                case WireProtocol.GET_BOARD:
+                    Board board = server.getBoard(WireProtocol.getGameId(frame));
+                    return new WireProtocol.FrameWriter(WireProtocol.BOARD).putBoard(board);
+                default:
+                    throw new RemoteException("Unknown request " + opcode);
+            }
+            return new WireProtocol.FrameWriter(WireProtocol.OK);
+        }
+
+        /**
+         * Queues a frame for the client, writing it right away if nothing is queued ahead of it.
+         */
+        private void send(ByteBuffer frame) throws RemoteException {
+            synchronized (this) {
+                if (closed) {
+                    throw new ConnectException("Connection to " + username + " is closed");
+                }
+                if (outbound.isEmpty()) {
+                    try {
+                        channel.write(frame);
+                    } catch (IOException e) {
+                        closeLater();
+                        throw new ConnectException("Failed to write to " + username, e);
+                    }
+                    if (!frame.hasRemaining()) {
+                        return;
+                    }
+                }
+                if (pendingBytes + frame.remaining() > MAX_PENDING_BYTES) {
+                    closeLater();
+                    throw new ConnectException(username + " is not reading its updates");
+                }
+                outbound.add(frame);
+                pendingBytes += frame.remaining();
+                if (outbound.size() == 1) {
+                    key.interestOpsOr(SelectionKey.OP_WRITE);
+                    selector.wakeup();
+                }
+            }
+        }
+
+        /**
+         * Writes queued frames until the socket is full. Selector thread only.
+         */
+        synchronized void flush() throws IOException {
+            ByteBuffer frame;
+            while ((frame = outbound.peek()) != null) {
+                int before = frame.remaining();
+                channel.write(frame);
+                pendingBytes -= before - frame.remaining();
+                if (frame.hasRemaining()) {
+                    return;
+                }
+                outbound.poll();
+            }
+            key.interestOpsAnd(~SelectionKey.OP_WRITE);
+        }
+
+        private void closeLater() {
+            // Called with this held; the close itself runs on a worker to keep lock order simple
+            workers.execute(this::close);
+        }
+
+        void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                outbound.clear();
+                pendingBytes = 0;
+            }
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close connection for " + username + ": " + e.getMessage());
+            }
+
+            // Handled after the requests already read from this client
+            if (username != null) {
+                submit(() -> server.handleConnectionLost(username, this));
+            }
+        }
+
+        @Override
+        public void applyUpdate(GameUpdate update) throws RemoteException {
+            send(new WireProtocol.FrameWriter(WireProtocol.UPDATE).putUpdate(update).finish());
+        }
+
+        @Override
+        public void freeze() throws RemoteException {
+            send(new WireProtocol.FrameWriter(WireProtocol.FREEZE).finish());
+        }
+
+        @Override
+        public void receiveChatMessage(int index, String message) throws RemoteException {
+            send(new WireProtocol.FrameWriter(WireProtocol.CHAT_MESSAGE).putInt(index).putString(message).finish());
+        }
+
+        @Override
+        public void receiveChatHistory(List<String> messages, int nextIndex) throws RemoteException {
+            WireProtocol.FrameWriter frame = new WireProtocol.FrameWriter(WireProtocol.CHAT_HISTORY)
+                    .putInt(nextIndex).putInt(messages.size());
+            for (String message : messages) {
+                frame.putString(message);
+            }
+            send(frame.finish());
+        }
+
+        @Override
+        public void heartbeat() throws RemoteException {
+            send(new WireProtocol.FrameWriter(WireProtocol.PING).finish());
+        }
+
+        @Override
+        public GameId getGameId() {
+            // The server tracks games on the Player, not on the connection
+            return null;
+        }
+
+        @Override
+        public String getUsername() {
+            return username;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+// Shaolong Xu 1067946
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.rmi.ConnectException;
+import java.rmi.RemoteException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Client side of the {@link WireProtocol} transport, a drop-in {@link ServerInterface}
+ * for clients that talk to a {@link NioServer} instead of the RMI registry.
+ * Calls block until the server's reply, as they do over RMI. Events arriving on the
+ * same socket are handed, in order, to the {@link ClientInterface} passed to
+ * {@code registerPlayer} or {@code handleClientReconnect}, on a thread of their own
+ * so a callback can call back into the server.
+ */
+public class NioServerConnection implements ServerInterface {
+    private static final long CALL_TIMEOUT_MILLIS = 15_000;
+
+    private final SocketChannel channel;
+    private final Object writeLock = new Object();
+    // Replies come back in request order, so the oldest waiting call takes the next one
+    private final Queue<CompletableFuture<ByteBuffer>> pendingReplies = new ConcurrentLinkedQueue<>();
+    private final ExecutorService events;
+    private volatile ClientInterface client;
+    private boolean closed; // Guarded by writeLock
+
+    private NioServerConnection(SocketChannel channel) {
+        this.channel = channel;
+        this.events = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "nio-client-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Connects to a {@link NioServer}.
+     */
+    public static NioServerConnection connect(String host, int port) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        NioServerConnection connection = new NioServerConnection(channel);
+        Thread reader = new Thread(connection::runReader, "nio-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+        return connection;
+    }
+
+    /**
+     * Closes the socket; the server then treats the player as disconnected.
+     */
+    public void close() {
+        close(new EOFException("Connection closed"));
+    }
+
+    private void close(IOException cause) {
+        // Closing the socket first unblocks a writer holding the lock
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close the server connection: " + e.getMessage());
+        }
+        synchronized (writeLock) {
+            closed = true;
+        }
+        CompletableFuture<ByteBuffer> pending;
+        while ((pending = pendingReplies.poll()) != null) {
+            pending.completeExceptionally(cause);
+        }
+        events.shutdown();
+    }
+
+    private void runReader() {
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        try {
+            while (true) {
+                header.clear();
+                readFully(header);
+                int length = header.getInt(0);
+                if (length < 1 || length > WireProtocol.MAX_FRAME) {
+                    throw new IOException("Bad frame length " + length);
+                }
+                ByteBuffer frame = ByteBuffer.allocate(length);
+                readFully(frame);
+                frame.flip();
+
+                byte opcode = frame.get(0);
+                if (WireProtocol.isReply(opcode)) {
+                    CompletableFuture<ByteBuffer> reply = pendingReplies.poll();
+                    if (reply == null) {
+                        throw new IOException("Reply " + opcode + " without a request");
+                    }
+                    reply.complete(frame);
+                } else {
+                    events.execute(() -> deliver(frame));
+                }
+            }
+        } catch (IOException e) {
+            close(e);
+        } catch (RejectedExecutionException e) {
+            // Closed by close() while an event was arriving
+        }
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Server closed the connection");
+            }
+        }
+    }
+
+    private void deliver(ByteBuffer frame) {
+        ClientInterface target = client;
+        if (target == null) {
+            return;
+        }
+        byte opcode = frame.get();
+        try {
+            switch (opcode) {
+                case WireProtocol.UPDATE:
+                    target.applyUpdate(WireProtocol.getUpdate(frame));
+                    break;
+                case WireProtocol.FREEZE:
+                    target.freeze();
+                    break;
+                case WireProtocol.CHAT_MESSAGE:
+                    int index = frame.getInt();
+                    target.receiveChatMessage(index, WireProtocol.getString(frame));
+                    break;
+                case WireProtocol.CHAT_HISTORY:
+                    int nextIndex = frame.getInt();
+                    target.receiveChatHistory(WireProtocol.getStrings(frame), nextIndex);
+                    break;
+                case WireProtocol.PING:
+                    target.heartbeat();
+                    break;
+                default:
+                    System.err.println("Ignoring unknown event " + opcode + " from the server");
+            }
+        } catch (RemoteException | RuntimeException e) {
+            System.err.println("Failed to handle event " + opcode + " from the server: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sends a request and waits for its reply.
+     *
+     * @return The reply frame, positioned after the opcode.
+     * @throws RemoteException If the server reported an error or could not be reached.
+     */
+    private ByteBuffer call(WireProtocol.FrameWriter request) throws RemoteException {
+        ByteBuffer frame = request.finish();
+        CompletableFuture<ByteBuffer> reply = new CompletableFuture<>();
+        synchronized (writeLock) {
+            if (closed) {
+                throw new ConnectException("Connection to the server is closed");
+            }
+            pendingReplies.add(reply);
+            try {
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+            } catch (IOException e) {
+                close(e);
+                throw new ConnectException("Failed to send a request to the server", e);
+            }
+        }
+
+        ByteBuffer response;
+        try {
+            response = reply.get(CALL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new ConnectException("Connection to the server was lost", (Exception) e.getCause());
+        } catch (TimeoutException e) {
+            throw new RemoteException("The server did not reply within " + CALL_TIMEOUT_MILLIS + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for the server");
+        }
+        if (response.get() == WireProtocol.ERROR) {
+            throw new RemoteException(WireProtocol.getString(response));
+        }
+        return response;
+    }
+
+    private static WireProtocol.FrameWriter request(byte opcode, GameId gameId) {
+        return new WireProtocol.FrameWriter(opcode).putGameId(gameId);
+    }
+
+    @Override
+    public void registerPlayer(String username, ClientInterface client) throws RemoteException {
+        this.client = client;
+        call(new WireProtocol.FrameWriter(WireProtocol.REGISTER).putString(username));
+    }
+
+    @Override
+    public void handleClientReconnect(String username, ClientInterface client) throws RemoteException {
+        this.client = client;
+        call(new WireProtocol.FrameWriter(WireProtocol.RECONNECT).putString(username));
+    }
+
+    // The server answers for the player bound by registerPlayer, so the username is not sent again
+
+    @Override
+    public void makeMove(GameId gameId, String username, int row, int col) throws RemoteException {
+        call(request(WireProtocol.MOVE, gameId).putByte(row).putByte(col));
+    }
+
+    @Override
+    public void sendChatMessage(GameId gameId, String username, String message) throws RemoteException {
+        call(request(WireProtocol.CHAT, gameId).putString(message));
+    }
+
+    @Override
+    public void quitGame(GameId gameId, String username) throws RemoteException {
+        call(request(WireProtocol.QUIT, gameId));
+    }
+
+    @Override
+    public void handleClientDisconnect(GameId gameId, String username) throws RemoteException {
+        call(request(WireProtocol.DISCONNECT, gameId));
+    }
+
+    @Override
+    public void heartbeat(String username) throws RemoteException {
+        call(new WireProtocol.FrameWriter(WireProtocol.HEARTBEAT));
+    }
+
+    @Override
+    public void requestSnapshot(GameId gameId, String username) throws RemoteException {
+        call(request(WireProtocol.REQUEST_SNAPSHOT, gameId));
+    }
+
+    @Override
+    public Board getBoard(GameId gameId) throws RemoteException {
+        return WireProtocol.getBoard(call(request(WireProtocol.GET_BOARD, gameId)));
+    }
+}
@@ -0,0 +1,120 @@
+// Shaolong Xu 1067946
+
+import java.util.Arrays;
+
+/**
+ * Perfect tic-tac-toe play from a table built once at class load. Every position
+ * reachable from the empty board, X moving first, is solved by minimax, and its
+ * value and best move are stored in one byte indexed by the base-3 encoding of the
+ * board. A lookup is two array reads and an add, so bots and auto-moves never
+ * search at runtime and take no lock.
+ *
+ * <p>Boards are passed as the 9-bit masks {@link GameSession} keeps, cell
+ * {@code row * 3 + col}. The side to move follows from the counts: X when they are equal.
+ */
+public final class PerfectPlay {
+    public static final int WIN = 1, DRAW = 0, LOSS = -1;
+
+    private static final int CELLS = 9;
+    private static final int NO_MOVE = 0xF;
+    private static final byte UNSOLVED = -1;
+
+    // Low 4 bits: best cell, or NO_MOVE once the game is over. High bits: value for the side to move, plus one.
+    private static final byte[] TABLE = new byte[19_683]; // 3^9
+    // Base-3 contribution of each X mask (digit 1) and O mask (digit 2)
+    private static final int[] X_INDEX = new int[1 << CELLS];
+    private static final int[] O_INDEX = new int[1 << CELLS];
+    private static final int POSITIONS;
+
+    static {
+        for (int mask = 0; mask < 1 << CELLS; mask++) {
+            int index = 0;
+            for (int cell = CELLS - 1; cell >= 0; cell--) {
+                index = index * 3 + ((mask >>> cell) & 1);
+            }
+            X_INDEX[mask] = index;
+            O_INDEX[mask] = index * 2;
+        }
+        Arrays.fill(TABLE, UNSOLVED);
+        solve(0, 0);
+
+        int positions = 0;
+        for (byte entry : TABLE) {
+            if (entry != UNSOLVED) {
+                positions++;
+            }
+        }
+        POSITIONS = positions;
+    }
+
+    private PerfectPlay() {
+    }
+
+    /**
+     * @return The cell the side to move should play, or -1 if the game is over or the position cannot arise.
+     */
+    public static int bestMove(int xMask, int oMask) {
+        byte entry = TABLE[X_INDEX[xMask] + O_INDEX[oMask]];
+        return entry == UNSOLVED || (entry & NO_MOVE) == NO_MOVE ? -1 : entry & NO_MOVE;
+    }
+
+    /**
+     * @return {@link #WIN}, {@link #DRAW} or {@link #LOSS} for the side to move under perfect play.
+     * @throws IllegalArgumentException If the position cannot arise in a game.
+     */
+    public static int value(int xMask, int oMask) {
+        byte entry = TABLE[X_INDEX[xMask] + O_INDEX[oMask]];
+        if (entry == UNSOLVED) {
+            throw new IllegalArgumentException("Unreachable position");
+        }
+        return (entry >> 4) - 1;
+    }
+
+    /**
+     * @return The number of positions in the table, 5,478 for standard tic-tac-toe.
+     */
+    public static int getPositionCount() {
+        return POSITIONS;
+    }
+
+    /**
+     * Solves a position and everything reachable from it.
+     *
+     * @return The value for the side to move.
+     */
+    private static int solve(int xMask, int oMask) {
+        int index = X_INDEX[xMask] + O_INDEX[oMask];
+        if (TABLE[index] != UNSOLVED) {
+            return (TABLE[index] >> 4) - 1;
+        }
+
+        boolean xToMove = Integer.bitCount(xMask) == Integer.bitCount(oMask);
+        int value;
+        int bestCell = NO_MOVE;
+        if (GameSession.hasLine(xToMove ? oMask : xMask)) {
+            value = LOSS; // The previous move won
+        } else if ((xMask | oMask) == (1 << CELLS) - 1) {
+            value = DRAW;
+        } else {
+            value = LOSS - 1;
+            boolean bestWinsNow = false;
+            for (int cell = 0; cell < CELLS; cell++) {
+                int bit = 1 << cell;
+                if (((xMask | oMask) & bit) != 0) {
+                    continue;
+                }
+                // Every child is solved, even after a win is found, so the whole game tree is in the table
+                int result = xToMove ? -solve(xMask | bit, oMask) : -solve(xMask, oMask | bit);
+                // Take an immediate win over a slower one, so bots finish games
+                boolean winsNow = GameSession.hasLine((xToMove ? xMask : oMask) | bit);
+                if (!bestWinsNow && (winsNow || result > value)) {
+                    value = result;
+                    bestCell = cell;
+                    bestWinsNow = winsNow;
+                }
+            }
+        }
+        TABLE[index] = (byte) ((value + 1) << 4 | bestCell);
+        return value;
+    }
+}
@@ -1,53 +1,65 @@
 // Shaolong Xu 1067946
 
-import java.rmi.RemoteException;
 import java.util.UUID;
 
 public class Player {
+    public static final int WIN_POINTS = 5;
+    public static final int LOSS_POINTS = 5;
+    public static final int DRAW_POINTS = 2;
 
     private final String username;
-    private char symbol;
-    private ClientInterface client;
-    private int points;
-    private int rank;
-    private UUID gameId;
+    // Written under a game's monitor, read by other games and the rank update
+    private volatile char symbol;
+    private volatile ClientInterface client;
+    private volatile int points;
+    private volatile UUID gameId;
+    private final PlayerStore.Record record;
+    private final RankIndex ranks;
 
-    public Player(String username, ClientInterface client) {
+    public Player(String username, ClientInterface client, PlayerStore.Record record, RankIndex ranks) {
         this.username = username;
         this.client = client;
-        this.points = 0;
+        this.points = record.getPoints();
+        this.record = record;
+        this.ranks = ranks;
     }
 
     // Getters
     public String getUsername() { return username; }
+    public int getId() { return record.getId(); }
     public char getSymbol() { return symbol; }
     public ClientInterface getClient() { return client; }
     public int getPoints() { return points; }
+    public int getRank() { return ranks.rankOf(points); }
     public UUID getGameId() { return gameId; }
 
     // Setters
     public void setClient(ClientInterface client) { this.client = client; }
     public void setSymbol(char symbol) { this.symbol = symbol; }
-    public void setRank(int rank) { this.rank = rank; }
-    public void setGameId(UUID gameId) {
-        this.gameId = gameId;
-        try {
-            this.client.setGameId(gameId);
-        } catch (RemoteException e) {
-            // Consider logging the exception or handling it as per your use case
+    public void setGameId(UUID gameId) { this.gameId = gameId; }
+
+    // Game Outcome Handlers; a game pays out after its monitor is released, so these lock the player
+    public synchronized void win() { setPoints(points + WIN_POINTS); }
+    public synchronized void lost() { setPoints(Math.max(0, points - LOSS_POINTS)); }
+    public synchronized void draw() { setPoints(points + DRAW_POINTS); }
+
+    /**
+     * Adopts the points held elsewhere, e.g. by the router of a sharded deployment.
+     */
+    public synchronized void syncPoints(int newPoints) {
+        if (newPoints != points) {
+            setPoints(newPoints);
         }
     }
 
-    // Game Outcome Handlers
-    public void win() { points += 5; }
-    public void lost() {
-        points -= 5;
-        if (points < 0) { points = 0; }
+    private void setPoints(int newPoints) {
+        ranks.move(points, newPoints);
+        points = newPoints;
+        record.setPoints(newPoints); // Write-through to the mapped player file
     }
-    public void draw() { points += 2; }
 
     @Override
     public String toString() {
-        return String.format("Rank #%d %s", rank, username);
+        return String.format("Rank #%d %s", getRank(), username);
     }
 }
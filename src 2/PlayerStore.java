@@ -0,0 +1,275 @@
+// Shaolong Xu 1067946
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Durable player records kept in memory-mapped files.
+ * {@code players.dat} holds one fixed-width record per username ever seen, and
+ * {@code players.idx} is an open-addressing hash table from username to record slot.
+ * Point updates are plain writes into the mapping, so they cost no system calls and
+ * survive a JVM crash; {@link #flush()} forces them to disk.
+ */
+public class PlayerStore implements AutoCloseable {
+    public static final int MAX_USERNAME_BYTES = 39;
+
+    private static final int DATA_MAGIC = 0x54545044; // "TTPD"
+    private static final int INDEX_MAGIC = 0x54545049; // "TTPI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 48; // name length, name, points, reserved
+    private static final int POINTS_OFFSET = 40;
+    private static final int INITIAL_RECORDS = 1024;
+
+    private final FileChannel dataChannel;
+    private final FileChannel indexChannel;
+    private volatile MappedByteBuffer data;
+    private MappedByteBuffer index;
+    private int recordCapacity;
+    private int tableCapacity;
+    private int count;
+
+    /**
+     * A handle on one player's record.
+     */
+    public final class Record {
+        private final int slot;
+
+        private Record(int slot) {
+            this.slot = slot;
+        }
+
+        /**
+         * @return A stable number for the player, usable as a compact reference in other files.
+         */
+        public int getId() { return slot; }
+        public int getPoints() { return data.getInt(recordOffset(slot) + POINTS_OFFSET); }
+        public void setPoints(int points) { data.putInt(recordOffset(slot) + POINTS_OFFSET, points); }
+    }
+
+    private PlayerStore(FileChannel dataChannel, FileChannel indexChannel) {
+        this.dataChannel = dataChannel;
+        this.indexChannel = indexChannel;
+    }
+
+    /**
+     * Opens the store in the given directory, creating it if needed.
+     * The index is rebuilt from the records only if it is missing or out of date.
+     */
+    public static PlayerStore open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        FileChannel dataChannel = FileChannel.open(directory.resolve("players.dat"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel indexChannel = FileChannel.open(directory.resolve("players.idx"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        PlayerStore store = new PlayerStore(dataChannel, indexChannel);
+        store.load();
+        return store;
+    }
+
+    private void load() throws IOException {
+        boolean fresh = dataChannel.size() < HEADER_SIZE;
+        recordCapacity = fresh ? INITIAL_RECORDS
+                : Math.max(INITIAL_RECORDS, (int) ((dataChannel.size() - HEADER_SIZE) / RECORD_SIZE));
+        data = mapData(recordCapacity);
+        if (fresh) {
+            data.putInt(0, DATA_MAGIC);
+            data.putInt(4, VERSION);
+            data.putInt(8, 0);
+        } else if (data.getInt(0) != DATA_MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("players.dat is not a player store");
+        }
+        count = data.getInt(8);
+
+        boolean indexValid = indexChannel.size() >= HEADER_SIZE;
+        if (indexValid) {
+            tableCapacity = (int) ((indexChannel.size() - HEADER_SIZE) / Integer.BYTES);
+            index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+            indexValid = Integer.bitCount(tableCapacity) == 1
+                    && index.getInt(0) == INDEX_MAGIC && index.getInt(4) == tableCapacity
+                    && index.getInt(8) == count && tableCapacity >= count * 2;
+        }
+        if (!indexValid) {
+            rebuildIndex(Math.max(INITIAL_RECORDS * 2, Integer.highestOneBit(Math.max(1, count)) << 2));
+        }
+    }
+
+    /**
+     * @return The player's record, or null if the username has never been stored.
+     */
+    public synchronized Record find(String username) {
+        int slot = index.getInt(tableOffset(find(encode(username)))) - 1;
+        return slot < 0 ? null : new Record(slot);
+    }
+
+    /**
+     * Adds a zero-point record for a username that is not stored yet.
+     *
+     * @throws IllegalArgumentException If the username is too long or already stored.
+     */
+    public synchronized Record create(String username) {
+        byte[] name = encode(username);
+        int bucket = find(name);
+        if (index.getInt(tableOffset(bucket)) != 0) {
+            throw new IllegalArgumentException("Player already stored: " + username);
+        }
+
+        if (count == recordCapacity) {
+            recordCapacity *= 2;
+            data = mapData(recordCapacity);
+        }
+        int slot = count;
+        int offset = recordOffset(slot);
+        data.put(offset, (byte) name.length);
+        data.put(offset + 1, name);
+        data.putInt(offset + POINTS_OFFSET, 0);
+
+        // The record is written before it is counted or indexed, so a crash never exposes half of it
+        count++;
+        data.putInt(8, count);
+        index.putInt(tableOffset(bucket), slot + 1);
+        index.putInt(8, count);
+        if (count * 2 > tableCapacity) {
+            rebuildIndex(tableCapacity * 2);
+        }
+        return new Record(slot);
+    }
+
+    /**
+     * Calls the consumer with the points of every stored player, e.g. to rebuild ranks at startup.
+     */
+    public synchronized void forEachPoints(IntConsumer consumer) {
+        for (int slot = 0; slot < count; slot++) {
+            consumer.accept(data.getInt(recordOffset(slot) + POINTS_OFFSET));
+        }
+    }
+
+    /**
+     * Calls the consumer with the username and points of every stored player, e.g. to copy them to a standby.
+     */
+    public synchronized void forEach(ObjIntConsumer<String> consumer) {
+        for (int slot = 0; slot < count; slot++) {
+            consumer.accept(getUsername(slot), data.getInt(recordOffset(slot) + POINTS_OFFSET));
+        }
+    }
+
+    /**
+     * @return The username stored under an ID from {@link Record#getId()}.
+     */
+    public synchronized String getUsername(int id) {
+        if (id < 0 || id >= count) {
+            throw new IllegalArgumentException("No player with ID " + id);
+        }
+        int offset = recordOffset(id);
+        byte[] name = new byte[data.get(offset)];
+        data.get(offset + 1, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public void flush() {
+        data.force();
+        synchronized (this) {
+            index.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        dataChannel.close();
+        indexChannel.close();
+    }
+
+    // Returns the table position holding the name, or the empty position where it belongs
+    private int find(byte[] name) {
+        int mask = tableCapacity - 1;
+        int bucket = hash(name) & mask;
+        while (true) {
+            int slot = index.getInt(tableOffset(bucket)) - 1;
+            if (slot < 0 || nameEquals(slot, name)) {
+                return bucket;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+    }
+
+    private boolean nameEquals(int slot, byte[] name) {
+        int offset = recordOffset(slot);
+        if (data.get(offset) != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (data.get(offset + 1 + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rebuildIndex(int capacity) {
+        tableCapacity = capacity;
+        try {
+            indexChannel.truncate(0);
+            index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * Integer.BYTES);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to map players.idx", e);
+        }
+        int mask = capacity - 1;
+        for (int slot = 0; slot < count; slot++) {
+            int offset = recordOffset(slot);
+            byte[] name = new byte[data.get(offset)];
+            data.get(offset + 1, name);
+            int bucket = hash(name) & mask;
+            while (index.getInt(tableOffset(bucket)) != 0) {
+                bucket = (bucket + 1) & mask;
+            }
+            index.putInt(tableOffset(bucket), slot + 1);
+        }
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, capacity);
+        index.putInt(8, count);
+    }
+
+    private MappedByteBuffer mapData(int records) {
+        try {
+            return dataChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) records * RECORD_SIZE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to map players.dat", e);
+        }
+    }
+
+    private static byte[] encode(String username) {
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_USERNAME_BYTES) {
+            throw new IllegalArgumentException("Username is longer than " + MAX_USERNAME_BYTES + " bytes: " + username);
+        }
+        return name;
+    }
+
+    private static int hash(byte[] name) {
+        int h = 1;
+        for (byte b : name) {
+            h = 31 * h + b;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static int recordOffset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    private static int tableOffset(int bucket) {
+        return HEADER_SIZE + bucket * Integer.BYTES;
+    }
+}
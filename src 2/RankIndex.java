@@ -0,0 +1,120 @@
+// Shaolong Xu 1067946
+
+/**
+ * Order-statistic index over player points, used to answer "what rank is this score"
+ * without sorting the player base. A Fenwick tree counts players per point value,
+ * so adding a player, moving a player between scores and looking up a rank are all
+ * O(log maxPoints). Players with equal points share a rank.
+ */
+public class RankIndex {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int[] counts = new int[INITIAL_CAPACITY]; // Players per point value
+    private int[] tree = new int[INITIAL_CAPACITY + 1]; // 1-based Fenwick tree over counts
+    private int total;
+
+    public synchronized void add(int points) {
+        increment(points, 1);
+        total++;
+    }
+
+    public synchronized void remove(int points) {
+        increment(points, -1);
+        total--;
+    }
+
+    /**
+     * Moves one player from one score to another, e.g. after a win or loss.
+     */
+    public synchronized void move(int fromPoints, int toPoints) {
+        if (fromPoints != toPoints) {
+            increment(fromPoints, -1);
+            increment(toPoints, 1);
+        }
+    }
+
+    /**
+     * @param points A score held by at least one player.
+     * @return 1 plus the number of players with strictly more points.
+     */
+    public synchronized int rankOf(int points) {
+        if (points >= counts.length) {
+            return 1;
+        }
+        return 1 + total - prefixSum(points);
+    }
+
+    public synchronized int size() {
+        return total;
+    }
+
+    /**
+     * @return A copy of the number of players at each point value.
+     */
+    public synchronized int[] getCounts() {
+        return counts.clone();
+    }
+
+    /**
+     * Replaces the whole index, e.g. with the counts held by a cluster coordinator.
+     */
+    public synchronized void replaceCounts(int[] newCounts) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < newCounts.length) {
+            capacity <<= 1;
+        }
+        int[] copy = new int[capacity];
+        System.arraycopy(newCounts, 0, copy, 0, newCounts.length);
+        int newTotal = 0;
+        for (int count : newCounts) {
+            newTotal += count;
+        }
+        counts = copy;
+        tree = build(copy);
+        total = newTotal;
+    }
+
+    private void increment(int points, int delta) {
+        if (points >= counts.length) {
+            grow(points);
+        }
+        counts[points] += delta;
+        for (int i = points + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    // Number of players with points in [0, points]
+    private int prefixSum(int points) {
+        int sum = 0;
+        for (int i = points + 1; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    private void grow(int points) {
+        int capacity = counts.length;
+        while (capacity <= points) {
+            capacity <<= 1;
+        }
+        int[] newCounts = new int[capacity];
+        System.arraycopy(counts, 0, newCounts, 0, counts.length);
+        counts = newCounts;
+        tree = build(newCounts);
+    }
+
+    // Linear-time Fenwick build: push each node's sum to its parent
+    private static int[] build(int[] counts) {
+        int capacity = counts.length;
+        int[] tree = new int[capacity + 1];
+        for (int i = 1; i <= capacity; i++) {
+            tree[i] += counts[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= capacity) {
+                tree[parent] += tree[i];
+            }
+        }
+        return tree;
+    }
+}
@@ -0,0 +1,110 @@
+// Shaolong Xu 1067946
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * The standby end of a {@link Replicator} stream. It applies the primary's state as
+ * it arrives and, once it has held a full copy, treats the stream closing or going
+ * quiet for a few heartbeats as the primary having died.
+ */
+public class ReplicationReceiver {
+
+    public interface Listener {
+        void onPoints(String username, int points);
+        void onSnapshot(ServerSnapshot snapshot);
+        void onRecord(byte[] record) throws IOException;
+
+        /**
+         * Called once, on the receiver thread, when the primary is gone.
+         */
+        void onPrimaryLost();
+    }
+
+    private static final int MISSED_HEARTBEATS = 4;
+
+    private final ServerSocket serverSocket;
+    private final Listener listener;
+    private final Thread receiver;
+
+    private ReplicationReceiver(ServerSocket serverSocket, Listener listener) {
+        this.serverSocket = serverSocket;
+        this.listener = listener;
+        this.receiver = new Thread(this::run, "replication-receiver");
+    }
+
+    public static ReplicationReceiver open(int port, Listener listener) throws IOException {
+        return new ReplicationReceiver(new ServerSocket(port), listener);
+    }
+
+    public void start() {
+        receiver.start();
+    }
+
+    private void run() {
+        try (ServerSocket server = serverSocket) {
+            while (true) {
+                boolean synced;
+                try (Socket socket = server.accept()) {
+                    System.out.println("Receiving the primary's state from " + socket.getRemoteSocketAddress());
+                    socket.setSoTimeout(Replicator.HEARTBEAT_MILLIS * MISSED_HEARTBEATS);
+                    synced = receive(new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024)));
+                } catch (SynchronizationLost e) {
+                    synced = e.synced;
+                    System.err.println("Replication stream ended: " + e.getCause());
+                }
+                if (synced) {
+                    listener.onPrimaryLost();
+                    return;
+                }
+                // A primary that drops out before a full copy arrives leaves nothing to take over
+            }
+        } catch (IOException e) {
+            System.err.println("Replication receiver failed: " + e.getMessage());
+        }
+    }
+
+    private boolean receive(DataInputStream in) throws SynchronizationLost {
+        boolean synced = false;
+        try {
+            while (true) {
+                byte type = in.readByte();
+                switch (type) {
+                    case Replicator.RECORD:
+                        byte[] record = new byte[in.readInt()];
+                        in.readFully(record);
+                        listener.onRecord(record);
+                        break;
+                    case Replicator.POINTS:
+                        listener.onPoints(in.readUTF(), in.readInt());
+                        break;
+                    case Replicator.SNAPSHOT:
+                        listener.onSnapshot(ServerSnapshot.read(in));
+                        synced = true;
+                        break;
+                    case Replicator.HEARTBEAT:
+                        break;
+                    default:
+                        throw new IOException("Unknown replication message " + type);
+                }
+            }
+        } catch (IOException e) {
+            throw new SynchronizationLost(synced, e);
+        }
+    }
+
+    // Carries whether a full copy had arrived before the stream broke
+    private static final class SynchronizationLost extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final boolean synced;
+
+        SynchronizationLost(boolean synced, IOException cause) {
+            super(cause);
+            this.synced = synced;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+// Shaolong Xu 1067946
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Streams the primary server's state to a hot standby. Game events arrive as the
+ * journal's own records and point changes as small messages; both are only queued
+ * here, and one sender thread ships them, so no game call waits on the standby.
+ *
+ * <p>Each time the standby connects it first gets every player's points and a
+ * snapshot of the active games, then the live stream. The snapshot is taken while
+ * games carry on, so the stream may repeat events it already holds; the standby
+ * skips them the same way journal replay does. If the queue overflows because the
+ * standby falls behind, the queue is dropped and the standby is sent a fresh copy.
+ *
+ * <p>Messages are a type byte followed by the body; the standby side is
+ * {@link ReplicationReceiver}.
+ */
+public class Replicator {
+    static final byte RECORD = 1, POINTS = 2, SNAPSHOT = 3, HEARTBEAT = 4;
+
+    // Silence for longer than this means the primary is gone
+    static final int HEARTBEAT_MILLIS = 500;
+
+    private static final int QUEUE_CAPACITY = 65_536;
+    private static final long RETRY_MILLIS = 1000;
+
+    private final InetSocketAddress standby;
+    private final Supplier<ServerSnapshot> snapshots;
+    private final PlayerStore players;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread sender;
+    private volatile boolean streaming; // Messages are only queued while a standby is attached
+    private volatile boolean overflowed;
+
+    /**
+     * @param standby   Where the standby listens for the stream.
+     * @param snapshots Copies the active games when a standby attaches.
+     * @param players   The store whose points are copied when a standby attaches.
+     */
+    public Replicator(InetSocketAddress standby, Supplier<ServerSnapshot> snapshots, PlayerStore players) {
+        this.standby = standby;
+        this.snapshots = snapshots;
+        this.players = players;
+        this.sender = new Thread(this::run, "replicator");
+        sender.setDaemon(true);
+    }
+
+    public void start() {
+        sender.start();
+    }
+
+    /**
+     * Queues a journal record, as passed to a {@link GameJournal#setTap tap}.
+     */
+    public void record(byte[] record) {
+        if (!streaming) {
+            return;
+        }
+        byte[] message = new byte[record.length + 1 + Integer.BYTES];
+        message[0] = RECORD;
+        message[1] = (byte) (record.length >>> 24);
+        message[2] = (byte) (record.length >>> 16);
+        message[3] = (byte) (record.length >>> 8);
+        message[4] = (byte) record.length;
+        System.arraycopy(record, 0, message, 1 + Integer.BYTES, record.length);
+        offer(message);
+    }
+
+    /**
+     * Queues a player's new points.
+     */
+    public void points(String username, int points) {
+        if (!streaming) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writePoints(out, username, points);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Cannot happen for an in-memory stream
+        }
+        offer(bytes.toByteArray());
+    }
+
+    private void offer(byte[] message) {
+        if (!queue.offer(message)) {
+            overflowed = true;
+        }
+    }
+
+    private static void writePoints(DataOutputStream out, String username, int points) throws IOException {
+        out.writeByte(POINTS);
+        out.writeUTF(username);
+        out.writeInt(points);
+    }
+
+    private void run() {
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(standby, (int) RETRY_MILLIS);
+                socket.setTcpNoDelay(true);
+                System.out.println("Replicating to the standby at " + standby);
+                stream(new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024)));
+            } catch (IOException e) {
+                if (streaming) {
+                    System.err.println("Lost the standby at " + standby + ": " + e.getMessage());
+                }
+            } finally {
+                streaming = false;
+                queue.clear();
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void stream(DataOutputStream out) throws IOException {
+        // Queue from before the copy is taken, so nothing falls between the copy and the stream
+        streaming = true;
+        while (true) {
+            if (overflowed) {
+                System.err.println("The standby fell behind; sending it a fresh copy.");
+            }
+            queue.clear();
+            overflowed = false;
+            sendState(out);
+            sendQueued(out);
+        }
+    }
+
+    // Returns when the queue overflows
+    private void sendQueued(DataOutputStream out) throws IOException {
+        while (!overflowed) {
+            byte[] message;
+            try {
+                message = queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted while replicating", e);
+            }
+            if (message == null) {
+                out.writeByte(HEARTBEAT);
+            } else {
+                // Send everything that is already waiting before flushing once
+                do {
+                    out.write(message);
+                } while ((message = queue.poll()) != null);
+            }
+            out.flush();
+        }
+    }
+
+    private void sendState(DataOutputStream out) throws IOException {
+        // Copied under the store's lock into memory, then written without it
+        ByteArrayOutputStream points = new ByteArrayOutputStream();
+        DataOutputStream pointsOut = new DataOutputStream(points);
+        players.forEach((username, value) -> {
+            try {
+                writePoints(pointsOut, username, value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // Cannot happen for an in-memory stream
+            }
+        });
+        points.writeTo(out);
+
+        out.writeByte(SNAPSHOT);
+        snapshots.get().write(out);
+        out.flush();
+    }
+}
@@ -0,0 +1,16 @@
+// Shaolong Xu 1067946
+
+import java.rmi.RemoteException;
+
+/**
+ * The entry point of a sharded deployment. It accepts every {@link ServerInterface}
+ * call, forwarding game calls to the owning shard, and tells clients which shard
+ * that is so they can skip the extra hop.
+ */
+public interface RouterInterface extends ServerInterface {
+    /**
+     * @return The shard owning the game.
+     * @throws RemoteException If the game is unknown or its shard is unreachable.
+     */
+    ServerInterface getShard(GameId gameId) throws RemoteException;
+}
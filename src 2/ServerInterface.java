@@ -2,15 +2,15 @@
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
-import java.util.UUID;
 public interface ServerInterface extends Remote{
-    void handleClientDisconnect(UUID gameId, String username) throws RemoteException;
+    void handleClientDisconnect(GameId gameId, String username) throws RemoteException;
     void handleClientReconnect(String username, ClientInterface client) throws  RemoteException;
-    void sendChatMessage(UUID gameId, String username, String message) throws RemoteException;
-    void quitGame(UUID gameId, String username) throws RemoteException;
-    void heartbeat() throws RemoteException;
+    void sendChatMessage(GameId gameId, String username, String message) throws RemoteException;
+    void quitGame(GameId gameId, String username) throws RemoteException;
+    void heartbeat(String username) throws RemoteException;
     void registerPlayer(String username, ClientInterface client) throws RemoteException;
-    void makeMove(UUID gameId, String username, int row, int col) throws RemoteException;
-    char[][] getBoard(UUID gameId) throws RemoteException;
+    void makeMove(GameId gameId, String username, int row, int col) throws RemoteException;
+    Board getBoard(GameId gameId) throws RemoteException;
+    void requestSnapshot(GameId gameId, String username) throws RemoteException;
 
 }
@@ -0,0 +1,89 @@
+// Shaolong Xu 1067946
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Server instrumentation published as the platform MBean {@code tictactoe:type=Server}.
+ * Recording costs two {@code nanoTime} calls and a few atomic increments, so it stays on
+ * in production.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+    public static final String OBJECT_NAME = "tictactoe:type=Server";
+
+    private final Map<String, LatencyHistogram> methods;
+    private final LatencyHistogram lockWait = new LatencyHistogram();
+    private final LatencyHistogram journalWait = new LatencyHistogram();
+    private final LatencyHistogram callbackRoundTrip = new LatencyHistogram();
+    private final IntSupplier activeGames, waitingPlayers, disconnectingPlayers, onlinePlayers;
+
+    /**
+     * @param methodNames The remote methods to time; the map never changes afterwards, so lookups need no locking.
+     */
+    public ServerMetrics(String[] methodNames, IntSupplier activeGames, IntSupplier waitingPlayers,
+                         IntSupplier disconnectingPlayers, IntSupplier onlinePlayers) {
+        Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+        for (String name : methodNames) {
+            histograms.put(name, new LatencyHistogram());
+        }
+        this.methods = Collections.unmodifiableMap(histograms);
+        this.activeGames = activeGames;
+        this.waitingPlayers = waitingPlayers;
+        this.disconnectingPlayers = disconnectingPlayers;
+        this.onlinePlayers = onlinePlayers;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            System.err.println("Failed to register server metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records a remote call that started at the given {@link System#nanoTime()}.
+     */
+    public void recordCall(String method, long startNanos) {
+        methods.get(method).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records the wait for a game's monitor, called first thing inside the synchronized block.
+     */
+    public void recordLockWait(long startNanos) {
+        lockWait.record(System.nanoTime() - startNanos);
+    }
+
+    public void recordJournalWait(long startNanos) {
+        journalWait.record(System.nanoTime() - startNanos);
+    }
+
+    public void recordCallback(long roundTripNanos) {
+        callbackRoundTrip.record(roundTripNanos);
+    }
+
+    @Override public int getActiveGames() { return activeGames.getAsInt(); }
+    @Override public int getWaitingPlayers() { return waitingPlayers.getAsInt(); }
+    @Override public int getDisconnectingPlayers() { return disconnectingPlayers.getAsInt(); }
+    @Override public int getOnlinePlayers() { return onlinePlayers.getAsInt(); }
+
+    @Override
+    public Map<String, LatencyStats> getMethodLatency() {
+        Map<String, LatencyStats> stats = new LinkedHashMap<>();
+        methods.forEach((name, histogram) -> stats.put(name, LatencyStats.of(histogram)));
+        return stats;
+    }
+
+    @Override public LatencyStats getLockWait() { return LatencyStats.of(lockWait); }
+    @Override public LatencyStats getJournalWait() { return LatencyStats.of(journalWait); }
+    @Override public LatencyStats getCallbackRoundTrip() { return LatencyStats.of(callbackRoundTrip); }
+}
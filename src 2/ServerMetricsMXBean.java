@@ -0,0 +1,26 @@
+// Shaolong Xu 1067946
+
+import java.util.Map;
+
+/**
+ * Management interface for {@link ServerMetrics}, readable with jconsole, VisualVM or any JMX scraper.
+ * Latencies are cumulative since the server started.
+ */
+public interface ServerMetricsMXBean {
+    int getActiveGames();
+    int getWaitingPlayers();
+    int getDisconnectingPlayers();
+    int getOnlinePlayers();
+
+    /** Latency of every {@link ServerInterface} method, keyed by method name. */
+    Map<String, LatencyStats> getMethodLatency();
+
+    /** Time spent waiting to enter a game's monitor. */
+    LatencyStats getLockWait();
+
+    /** Time a move spends waiting for its journal record to reach disk. */
+    LatencyStats getJournalWait();
+
+    /** Round trip of each {@link ClientInterface} callback. */
+    LatencyStats getCallbackRoundTrip();
+}
@@ -0,0 +1,190 @@
+// Shaolong Xu 1067946
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Point-in-time copy of the server's active games, written in a compact binary form.
+ * Restart loads the latest snapshot and replays only the journal segments written after it.
+ *
+ * <p>Layout: magic {@code "TTSS"}, version, the first journal segment still needed,
+ * the wall-clock time it was taken, then one record per game. A game's board is
+ * stored as its size, win length and the cells played, so it costs the same on any
+ * board; version 2 snapshots, which held classic games only, are still read.
+ */
+public class ServerSnapshot {
+    private static final int MAGIC = 0x54545353; // "TTSS"
+    private static final int VERSION = 3;
+
+    /**
+     * The state of one game, copied while holding the game's monitor.
+     */
+    public static final class GameState {
+        final UUID gameId;
+        final String player1, player2;
+        final char player1Symbol;
+        final int size, winLength;
+        final short[] moves;
+        final boolean player1ToMove;
+        final int chatFirstIndex;
+        final List<String> chat;
+        // Wall-clock reconnect deadlines, or 0 for a connected player
+        final long player1Deadline, player2Deadline;
+
+        GameState(UUID gameId, String player1, String player2, char player1Symbol,
+                  int size, int winLength, short[] moves, boolean player1ToMove,
+                  int chatFirstIndex, List<String> chat, long player1Deadline, long player2Deadline) {
+            this.gameId = gameId;
+            this.player1 = player1;
+            this.player2 = player2;
+            this.player1Symbol = player1Symbol;
+            this.size = size;
+            this.winLength = winLength;
+            this.moves = moves;
+            this.player1ToMove = player1ToMove;
+            this.chatFirstIndex = chatFirstIndex;
+            this.chat = chat;
+            this.player1Deadline = player1Deadline;
+            this.player2Deadline = player2Deadline;
+        }
+    }
+
+    private final long firstSegment;
+    private final long takenAt;
+    private final List<GameState> games;
+
+    public ServerSnapshot(long firstSegment, long takenAt, List<GameState> games) {
+        this.firstSegment = firstSegment;
+        this.takenAt = takenAt;
+        this.games = games;
+    }
+
+    public long getFirstSegment() { return firstSegment; }
+    public long getTakenAt() { return takenAt; }
+    public List<GameState> getGames() { return games; }
+
+    /**
+     * Writes the snapshot to a temporary file, syncs it, then renames it over the old one
+     * so a crash mid-write leaves the previous snapshot intact.
+     */
+    public void write(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            write(out);
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes the snapshot to a stream, e.g. to bring a standby server up to date.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(firstSegment);
+        out.writeLong(takenAt);
+        out.writeInt(games.size());
+        for (GameState game : games) {
+            out.writeLong(game.gameId.getMostSignificantBits());
+            out.writeLong(game.gameId.getLeastSignificantBits());
+            out.writeUTF(game.player1);
+            out.writeUTF(game.player2);
+            out.writeChar(game.player1Symbol);
+            out.writeByte(game.size);
+            out.writeByte(game.winLength);
+            out.writeShort(game.moves.length);
+            for (short cell : game.moves) {
+                out.writeShort(cell);
+            }
+            out.writeBoolean(game.player1ToMove);
+            out.writeInt(game.chatFirstIndex);
+            out.writeByte(game.chat.size());
+            for (String message : game.chat) {
+                out.writeUTF(message);
+            }
+            out.writeLong(game.player1Deadline);
+            out.writeLong(game.player2Deadline);
+        }
+    }
+
+    /**
+     * @return The snapshot stored in the file, or null if there is none yet.
+     */
+    public static ServerSnapshot read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return read(in);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write(DataOutput)}.
+     */
+    public static ServerSnapshot read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Unrecognised snapshot");
+        }
+        int version = in.readInt();
+        if (version != VERSION && version != 2) {
+            throw new IOException("Unrecognised snapshot version " + version);
+        }
+        long firstSegment = in.readLong();
+        long takenAt = in.readLong();
+        int count = in.readInt();
+        List<GameState> games = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            UUID gameId = new UUID(in.readLong(), in.readLong());
+            String player1 = in.readUTF();
+            String player2 = in.readUTF();
+            char player1Symbol = in.readChar();
+            int size, winLength;
+            short[] moves;
+            if (version == 2) {
+                // Classic games: both masks in one int, then the cells played, four bits per move
+                in.readInt();
+                moves = new short[in.readUnsignedByte()];
+                long moveLog = in.readLong();
+                for (int move = 0; move < moves.length; move++) {
+                    moves[move] = (short) (moveLog >>> (4 * move) & 0xF);
+                }
+                size = GameSession.CLASSIC_SIZE;
+                winLength = GameSession.CLASSIC_SIZE;
+            } else {
+                size = in.readUnsignedByte();
+                winLength = in.readUnsignedByte();
+                moves = new short[in.readUnsignedShort()];
+                for (int move = 0; move < moves.length; move++) {
+                    moves[move] = in.readShort();
+                }
+            }
+            boolean player1ToMove = in.readBoolean();
+            int chatFirstIndex = in.readInt();
+            int chatSize = in.readUnsignedByte();
+            List<String> chat = new ArrayList<>(chatSize);
+            for (int j = 0; j < chatSize; j++) {
+                chat.add(in.readUTF());
+            }
+            games.add(new GameState(gameId, player1, player2, player1Symbol,
+                    size, winLength, moves, player1ToMove,
+                    chatFirstIndex, chat, in.readLong(), in.readLong()));
+        }
+        return new ServerSnapshot(firstSegment, takenAt, games);
+    }
+}
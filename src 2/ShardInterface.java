@@ -0,0 +1,26 @@
+// Shaolong Xu 1067946
+
+import java.rmi.RemoteException;
+
+/**
+ * A game server running as one shard behind a {@link GameRouter}. Clients call its
+ * {@link ServerInterface} methods directly for the games it owns; the router hands
+ * it new games and returning players.
+ */
+public interface ShardInterface extends ServerInterface {
+    /**
+     * Starts a game between two players paired by the router.
+     *
+     * @param points1 Player 1's points as the router knows them.
+     * @param points2 Player 2's points as the router knows them.
+     */
+    void startGame(GameId gameId, String player1, ClientInterface client1, int points1,
+                   String player2, ClientInterface client2, int points2) throws RemoteException;
+
+    /**
+     * Puts a reconnecting player back into their game on this shard.
+     *
+     * @return false if the player has no game here.
+     */
+    boolean resumePlayer(String username, ClientInterface client) throws RemoteException;
+}
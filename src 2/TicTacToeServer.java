@@ -1,6 +1,11 @@
 // Shaolong Xu 1067946
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.rmi.AlreadyBoundException;
+import java.rmi.Naming;
 import java.util.*;
 import java.rmi.RemoteException;
 import java.rmi.registry.Registry;
@@ -8,320 +13,1171 @@ import java.rmi.server.UnicastRemoteObject;
 import java.rmi.registry.LocateRegistry;
 
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
-public class TicTacToeServer extends UnicastRemoteObject implements ServerInterface {
-
-    private final Queue<Player> waitingPlayers = new LinkedList<>();
-    private final Map<Player, Timer> disconnectPlayers = new HashMap<>();
-    private final Map<UUID, GameSession> activeGames = new HashMap<>();
-    private final Map<String, Player> allPlayers = new HashMap<>();
+public class TicTacToeServer extends UnicastRemoteObject implements ShardInterface {
+
+    // Each GameSession is guarded by its own monitor; the matchmaking queue and
+    // the rank index have their own locks so games never wait on each other.
+    private final Map<Player, TimingWheel.Timeout> disconnectPlayers = new ConcurrentHashMap<>();
+    // The deadline of the move each running game is waiting for
+    private final Map<GameSession, TimingWheel.Timeout> turnClocks = new ConcurrentHashMap<>();
+    private final Map<UUID, GameSession> activeGames = new ConcurrentHashMap<>();
+    private final Map<String, Player> allPlayers = new ConcurrentHashMap<>();
+    private final RankIndex rankIndex = new RankIndex();
+    private final PlayerStore playerStore;
+    private final GameJournal journal;
+    private final Path snapshotFile;
+    private final GameArchive archive;
+    // Finished games are written to the archive here, so no game lock waits on its file
+    private final ExecutorService archiveWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "archive-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // One wheel thread owns every reconnect grace and turn clock deadline
+    private final TimingWheel timingWheel = new TimingWheel(100, TimeUnit.MILLISECONDS, 512);
+    // Deadlines that run out are handled here, since ending a game waits for its monitor and does I/O
+    private final ExecutorService timeoutExecutor = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+                Thread thread = new Thread(r, "game-timeout");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    // Clients heartbeat at least every 3 seconds, so suspicion sets in after roughly 9 seconds of silence
+    private final FailureDetector failureDetector = new FailureDetector(8.0, 3000, 3000, 1000, 3000);
+    private final CallbackDispatcher dispatcher = new CallbackDispatcher(
+            Math.max(8, Runtime.getRuntime().availableProcessors() * 4),
+            (player, roundTripNanos) -> {
+                failureDetector.heartbeat(player.getUsername());
+                this.metrics.recordCallback(roundTripNanos);
+            },
+            this::handleCallbackFailure);
+    // Pairs players within 10 points straight away, widening by 5 points per second of waiting
+    private final MatchmakingEngine matchmaker = new MatchmakingEngine(10, 10, 5,
+            player -> !failureDetector.isSuspected(player.getUsername()), this::startGame);
+    private final ServerMetrics metrics = new ServerMetrics(
+            new String[]{"registerPlayer", "makeMove", "sendChatMessage", "quitGame", "handleClientDisconnect",
+                    "handleClientReconnect", "requestSnapshot", "getBoard", "heartbeat"},
+            activeGames::size, matchmaker::getQueueDepth, disconnectPlayers::size, allPlayers::size);
 
     private Timer heartbeatTimer;
+    private Timer snapshotTimer;
+
+    // Set when this server runs as a shard; the coordinator then owns player points
+    private volatile CoordinatorInterface coordinator;
+    private ExecutorService coordinatorExecutor;
+    private Timer rankTimer;
+
+    // Set on a primary that streams its state to a hot standby
+    private Replicator replicator;
+
+    // Bots partner players left alone in the queue; their names are reused once their game ends
+    private final ScheduledExecutorService botScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "bot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Deque<String> idleBots = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger botCount = new AtomicInteger();
+
+
+    // How long a disconnected player has to come back before the game is drawn
+    private static final long GRACE_PERIOD_MILLIS = 30_000;
+
+    // How long a player has for each move before the server plays it for them; 0 turns the clock off
+    private static final long TURN_MILLIS = Long.getLong("tictactoe.turnMillis", 20_000);
+
+    // How long a player waits without a partner before being given a bot; 0 turns bots off
+    private static final long BOT_WAIT_MILLIS = Long.getLong("tictactoe.botWaitMillis", 15_000);
 
+    // Board of the games started here, e.g. 15 and 5 for five in a row; games recovered from disk keep their own
+    private static final int BOARD_SIZE = Integer.getInteger("tictactoe.boardSize", GameSession.CLASSIC_SIZE);
+    private static final int WIN_LENGTH = Integer.getInteger("tictactoe.winLength", Math.min(BOARD_SIZE, 5));
 
-    public TicTacToeServer() throws RemoteException {
-        // Initialization logic is already in the member declarations
+    public TicTacToeServer(PlayerStore playerStore, GameJournal journal, Path snapshotFile, GameArchive archive)
+            throws RemoteException {
+        this.playerStore = playerStore;
+        this.journal = journal;
+        this.snapshotFile = snapshotFile;
+        this.archive = archive;
+
+        // Rank every stored player, not just the ones online now
+        playerStore.forEachPoints(rankIndex::add);
+
+        try {
+            recoverGames();
+        } catch (IOException e) {
+            throw new RemoteException("Failed to recover games", e);
+        }
     }
 
-    @Override
-    public synchronized void registerPlayer(String username, ClientInterface client) throws RemoteException{
-        Player player = allPlayers.get(username);
+    /**
+     * Rebuilds the games that were still running when the server stopped, starting
+     * from the latest snapshot and replaying the journal written since.
+     * No client is attached after a restart, so every recovered player starts
+     * a grace period; one already disconnected keeps what was left of theirs.
+     *
+     * <p>Snapshots are taken while games keep running, so the journal may repeat
+     * events the snapshot already holds; replay skips them.
+     */
+    private void recoverGames() throws IOException {
+        Map<Player, Long> graceDeadlines = new HashMap<>();
+        ServerSnapshot snapshot = ServerSnapshot.read(snapshotFile);
+        if (snapshot != null) {
+            restoreSnapshot(snapshot, graceDeadlines);
+        }
+        journal.replay(snapshot == null ? 0 : snapshot.getFirstSegment(), new Replay(graceDeadlines));
+        resumeRecoveredGames(graceDeadlines);
+    }
 
-        // If the player is not already registered, create a new player and add to allPlayers map
-        if(player == null){
-            player = new Player(username, client);
-            allPlayers.put(username, player);
-        }else {
-            player.setClient(client);
+    private void restoreSnapshot(ServerSnapshot snapshot, Map<Player, Long> graceDeadlines) {
+        for (ServerSnapshot.GameState state : snapshot.getGames()) {
+            GameSession game = restoreGame(state.gameId, state.player1, state.player2, state.player1Symbol,
+                    state.size, state.winLength);
+            game.restore(state.moves, state.player1ToMove, state.chatFirstIndex, state.chat);
+            if (state.player1Deadline > 0) {
+                graceDeadlines.put(game.getPlayer1(), state.player1Deadline);
+            }
+            if (state.player2Deadline > 0) {
+                graceDeadlines.put(game.getPlayer2(), state.player2Deadline);
+            }
         }
-        updatePlayerRanks();
-        if(!waitingPlayers.isEmpty()){
-            Player opponent = waitingPlayers.poll();
+    }
 
-            // Log the opponent information for debugging purposes
-            System.out.println(opponent.toString() + " is polled.");
+    /**
+     * Applies journal records to the games being rebuilt, skipping events they already hold.
+     * Used for crash recovery and, on a standby, for the primary's replicated records.
+     */
+    private class Replay implements GameJournal.Listener {
+        private final Map<Player, Long> graceDeadlines;
 
-            // Check if the opponent is online by sending a heartbeat
-            try{
-                opponent.getClient().heartbeat();
-            }catch(RemoteException e){
-                waitingPlayers.add(player);
-                return;
+        Replay(Map<Player, Long> graceDeadlines) {
+            this.graceDeadlines = graceDeadlines;
+        }
+
+        @Override
+        public void onCreate(long time, UUID gameId, String player1, String player2, char player1Symbol,
+                             int size, int winLength) {
+            if (!activeGames.containsKey(gameId)) {
+                restoreGame(gameId, player1, player2, player1Symbol, size, winLength);
+            }
+        }
+
+        @Override
+        public void onMove(long time, UUID gameId, int seq, int row, int col, char symbol) {
+            GameSession game = activeGames.get(gameId);
+            if (game != null && seq == game.getMoveSeq() + 1) {
+                game.makeMove(row, col, symbol);
+            }
+        }
+
+        @Override
+        public void onChat(long time, UUID gameId, int index, String message) {
+            GameSession game = activeGames.get(gameId);
+            if (game != null && index == game.getChatHistory().getNextIndex()) {
+                game.addChatMessage(message);
+            }
+        }
+
+        @Override
+        public void onDisconnect(long time, UUID gameId, String username) {
+            Player player = allPlayers.get(username);
+            if (player != null) {
+                graceDeadlines.putIfAbsent(player, time + GRACE_PERIOD_MILLIS);
+            }
+        }
+
+        @Override
+        public void onReconnect(long time, UUID gameId, String username) {
+            Player player = allPlayers.get(username);
+            if (player != null) {
+                graceDeadlines.remove(player);
+            }
+        }
+
+        @Override
+        public void onOutcome(long time, UUID gameId, String outcome) {
+            // Points are paid only after the outcome is on disk, and the record does not carry
+            // them, so recovery cannot tell whether the store has them; a crash between the
+            // sync and the payout loses that game's points rather than paying them twice
+            GameSession game = activeGames.remove(gameId);
+            if (game != null) {
+                graceDeadlines.remove(game.getPlayer1());
+                graceDeadlines.remove(game.getPlayer2());
+                game.getPlayer1().setGameId(null);
+                game.getPlayer2().setGameId(null);
+            }
+        }
+    }
+
+    /**
+     * Starts a grace period for every player of the rebuilt games, since none of
+     * them has a client attached here yet.
+     */
+    private void resumeRecoveredGames(Map<Player, Long> graceDeadlines) {
+        // Players who are not in a recovered game have nothing to resume
+        allPlayers.values().removeIf(player -> player.getGameId() == null);
+
+        long now = System.currentTimeMillis();
+        for (GameSession game : activeGames.values()) {
+            for (Player player : new Player[]{game.getPlayer1(), game.getPlayer2()}) {
+                // Bots come back with the server
+                if (player.getClient() instanceof BotClient) {
+                    continue;
+                }
+                long deadline = graceDeadlines.getOrDefault(player, now + GRACE_PERIOD_MILLIS);
+                startGracePeriod(game, player, Math.max(0, deadline - now));
+            }
+        }
+        if (!activeGames.isEmpty()) {
+            System.out.println("Recovered " + activeGames.size() + " game(s).");
+        }
+    }
+
+    private GameSession restoreGame(UUID gameId, String player1, String player2, char player1Symbol,
+                                    int size, int winLength) {
+        Player first = allPlayers.computeIfAbsent(player1, name -> loadPlayer(name, restoredClient(name)));
+        Player second = allPlayers.computeIfAbsent(player2, name -> loadPlayer(name, restoredClient(name)));
+        first.setSymbol(player1Symbol);
+        second.setSymbol(player1Symbol == 'X' ? 'O' : 'X');
+        first.setGameId(gameId);
+        second.setGameId(gameId);
+        GameSession game = new GameSession(gameId, first, second, size, winLength);
+        activeGames.put(gameId, game);
+        return game;
+    }
+
+    // Human players get their client back when they reconnect; bots get a new one now
+    private ClientInterface restoredClient(String username) {
+        return BotClient.isBotName(username) ? newBotClient(username) : null;
+    }
+
+    /**
+     * Writes a snapshot of the active games and drops the journal segments it covers.
+     * Each game is copied under its own monitor, so moves in other games carry on
+     * while the snapshot is taken and written.
+     */
+    public void takeSnapshot() throws IOException {
+        // Records appended from here on land in the new segment and are replayed over the snapshot
+        long firstSegment = journal.rotate();
+        long now = System.currentTimeMillis();
+
+        new ServerSnapshot(firstSegment, now, copyGames(now)).write(snapshotFile);
+        journal.deleteSegmentsBefore(firstSegment);
+    }
+
+    private List<ServerSnapshot.GameState> copyGames(long now) {
+        List<ServerSnapshot.GameState> games = new ArrayList<>();
+        for (GameSession game : activeGames.values()) {
+            synchronized (game) {
+                if (isActive(game)) {
+                    games.add(copyState(game, now));
+                }
+            }
+        }
+        return games;
+    }
+
+    private ServerSnapshot.GameState copyState(GameSession game, long now) {
+        Player player1 = game.getPlayer1();
+        ChatHistory chat = game.getChatHistory();
+        return new ServerSnapshot.GameState(game.getGameId(), player1.getUsername(),
+                game.getPlayer2().getUsername(), player1.getSymbol(),
+                game.getSize(), game.getWinLength(), game.getMoves(),
+                game.getCurrentPlayer() == player1,
+                chat.getFirstIndex(), chat.getMessages(),
+                graceDeadline(player1, now), graceDeadline(game.getPlayer2(), now));
+    }
+
+    private long graceDeadline(Player player, long now) {
+        TimingWheel.Timeout timeout = disconnectPlayers.get(player);
+        return timeout == null ? 0 : now + timeout.getDelay(TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes a snapshot in the background at a fixed interval, keeping restart time bounded.
+     */
+    public void startSnapshots(long intervalMillis) {
+        snapshotTimer = new Timer("snapshot", true);
+        snapshotTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    takeSnapshot();
+                } catch (IOException e) {
+                    System.err.println("Failed to take a snapshot: " + e.getMessage());
+                }
             }
+        }, intervalMillis, intervalMillis);
+    }
 
-            // Create a new game session and assign symbols 'X' and 'O' to the players
-            GameSession newGame;
-            if (Math.random() < 0.5){
-                player.setSymbol('X');
-                opponent.setSymbol('O');
-                newGame = new GameSession(player, opponent);
-            }else{
-                player.setSymbol('O');
-                opponent.setSymbol('X');
-                newGame = new GameSession(opponent, player);
+    /**
+     * Streams every game event and point change to a hot standby from now on.
+     * Events are handed to a background sender, so no game call waits on the standby.
+     */
+    public void startReplication(InetSocketAddress standby) {
+        replicator = new Replicator(standby,
+                () -> new ServerSnapshot(0, System.currentTimeMillis(), copyGames(System.currentTimeMillis())),
+                playerStore);
+        journal.setTap(replicator::record);
+        replicator.start();
+    }
+
+    /**
+     * Runs this server as the hot standby of a primary replicating to the given port.
+     * Until the primary is lost it only mirrors the primary's games and points. Then
+     * the mirrored games resume here, every player getting the usual grace period to
+     * reconnect, and {@code onPromoted} runs to start serving clients.
+     */
+    public void startStandby(int replicationPort, Runnable onPromoted) throws IOException {
+        // Whatever was recovered from this server's own files is replaced by the primary's state
+        discardGames();
+        Map<Player, Long> graceDeadlines = new HashMap<>();
+        Replay replay = new Replay(graceDeadlines);
+
+        ReplicationReceiver.open(replicationPort, new ReplicationReceiver.Listener() {
+            @Override
+            public void onPoints(String username, int points) {
+                Player player = allPlayers.get(username);
+                (player != null ? player : loadPlayer(username, null)).syncPoints(points);
             }
 
+            @Override
+            public void onSnapshot(ServerSnapshot snapshot) {
+                discardGames();
+                graceDeadlines.clear();
+                restoreSnapshot(snapshot, graceDeadlines);
+            }
+
+            @Override
+            public void onRecord(byte[] record) throws IOException {
+                GameJournal.decode(record, replay);
+            }
+
+            @Override
+            public void onPrimaryLost() {
+                System.out.println("The primary is gone; taking over its games.");
+                resumeRecoveredGames(graceDeadlines);
+                try {
+                    takeSnapshot();
+                } catch (IOException e) {
+                    System.err.println("Failed to take a snapshot: " + e.getMessage());
+                }
+                onPromoted.run();
+            }
+        }).start();
+    }
+
+    private void discardGames() {
+        for (TimingWheel.Timeout timeout : disconnectPlayers.values()) {
+            timeout.cancel();
+        }
+        disconnectPlayers.clear();
+        for (TimingWheel.Timeout timeout : turnClocks.values()) {
+            timeout.cancel();
+        }
+        turnClocks.clear();
+        activeGames.clear();
+        allPlayers.clear();
+    }
+
+    /**
+     * Publishes the server metrics over JMX under {@value ServerMetrics#OBJECT_NAME}.
+     */
+    public void registerMetrics() {
+        metrics.register();
+    }
+
+    @Override
+    public void registerPlayer(String username, ClientInterface client) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            failureDetector.heartbeat(username);
+            if (BotClient.isBotName(username)) {
+                throw new RemoteException("Usernames starting with \"" + BotClient.NAME_PREFIX + "\" are reserved for bots.");
+            }
+
+            // If the player is not online yet, load or create their stored record and add them to allPlayers map
+            Player player;
+            try {
+                player = allPlayers.computeIfAbsent(username, name -> loadPlayer(name, client));
+            } catch (IllegalArgumentException e) {
+                throw new RemoteException(e.getMessage());
+            }
+            player.setClient(client);
+
+            // Matching happens in the background, so registration returns straight away
+            matchmaker.enqueue(player);
+            GameUpdate waiting = GameUpdate.status(null, 0, false, GameStatus.FINDING_PLAYERS, false);
+            dispatcher.dispatch(player, c -> c.applyUpdate(waiting));
+        } finally {
+            metrics.recordCall("registerPlayer", start);
+        }
+    }
+
+    private Player loadPlayer(String username, ClientInterface client) {
+        PlayerStore.Record record = playerStore.find(username);
+        if (record == null) {
+            record = playerStore.create(username);
+            rankIndex.add(0);
+        }
+        return new Player(username, client, record, rankIndex);
+    }
+
+    /**
+     * Drops a player who has left from the online map; their points stay in the player store.
+     */
+    private void evictPlayer(Player player) {
+        allPlayers.remove(player.getUsername(), player);
+    }
+
+    /**
+     * Starts a game for a pair formed by the matchmaker.
+     * Package-private so the benchmark drivers can start games directly.
+     *
+     * @param player   The first player of the pair.
+     * @param opponent The second player of the pair.
+     */
+    void startGame(Player player, Player opponent) {
+        // Log the pairing and queue statistics for debugging purposes
+        System.out.printf("Matched %s with %s. Queue depth %d, average wait %.0f ms.%n",
+                player, opponent, matchmaker.getQueueDepth(), matchmaker.getAverageTimeToMatchMillis());
+        startGame(UUID.randomUUID(), player, opponent);
+    }
+
+    private void startGame(UUID gameId, Player player, Player opponent) {
+        // Create a new game session and assign symbols 'X' and 'O' to the players
+        GameSession newGame;
+        if (Math.random() < 0.5){
+            player.setSymbol('X');
+            opponent.setSymbol('O');
+            newGame = new GameSession(gameId, player, opponent, BOARD_SIZE, WIN_LENGTH);
+        }else{
+            player.setSymbol('O');
+            opponent.setSymbol('X');
+            newGame = new GameSession(gameId, opponent, player, BOARD_SIZE, WIN_LENGTH);
+        }
+
+        synchronized (newGame) {
             // Add the new game session to the active games map
             activeGames.put(newGame.getGameId(), newGame);
 
             // Notify both players about the start of the game and whose turn it is
-            String startingMessage = "Welcome to Tic-Tac-Toe!" + newGame.getCurrentPlayer().toString() +
-                    ", you are playing as '" + newGame.getCurrentPlayer().getSymbol() + "', It's "
-                    + newGame.getCurrentPlayer().toString() + "'s turn.";
-            newGame.getCurrentPlayer().getClient().switchTurn();
-            player.getClient().notifyStatus(startingMessage);
-            opponent.getClient().notifyStatus(startingMessage);
-
+            GameStatus startingStatus = GameStatus.gameStarted(newGame.getCurrentPlayer());
             // Set game IDs for both players
             player.setGameId(newGame.getGameId());
             opponent.setGameId(newGame.getGameId());
-        }else{
-            waitingPlayers.add(player);
-            player.getClient().notifyStatus("Finding Players");
+            journal.appendCreate(newGame.getGameId(), newGame.getPlayer1().getUsername(),
+                    newGame.getPlayer2().getUsername(), newGame.getPlayer1().getSymbol(),
+                    newGame.getSize(), newGame.getWinLength());
+
+            startTurnClock(newGame);
+            // The empty board tells each client the size to draw
+            sendSnapshot(newGame, newGame.getPlayer1(), startingStatus);
+            sendSnapshot(newGame, newGame.getPlayer2(), startingStatus);
         }
     }
 
     @Override
-    public synchronized void makeMove(UUID gameId, String username, int row, int col) throws RemoteException {
-        GameSession currentGame = activeGames.get(gameId);
-        Player currentPlayer = currentGame.getCurrentPlayer();
+    public void startGame(GameId gameId, String player1, ClientInterface client1, int points1,
+                          String player2, ClientInterface client2, int points2) throws RemoteException {
+        Player first = joinPlayer(player1, client1, points1);
+        Player second = joinPlayer(player2, client2, points2);
+        System.out.printf("Starting game %s between %s and %s.%n", gameId, first, second);
+        startGame(GameId.toUuid(gameId), first, second);
+    }
 
-        // Check connectivity for both players and handle disconnections
+    /**
+     * Brings a player paired by the router onto this shard with the router's points.
+     */
+    private Player joinPlayer(String username, ClientInterface client, int points) throws RemoteException {
+        // The player's client starts a fresh arrival history here
+        failureDetector.reset(username);
+        failureDetector.heartbeat(username);
+
+        Player player;
         try {
-            currentGame.getPlayer1().getClient().heartbeat();
-            currentGame.getPlayer2().getClient().heartbeat();
-        } catch (RemoteException e) {
-            handleClientDisconnect(gameId, currentPlayer.getUsername());
+            player = allPlayers.computeIfAbsent(username, name -> loadPlayer(name, client));
+        } catch (IllegalArgumentException e) {
+            throw new RemoteException(e.getMessage());
+        }
+        if (player.getGameId() != null) {
+            throw new RemoteException(username + " is already in a game on this shard.");
+        }
+        player.setClient(client);
+        player.syncPoints(points);
+        return player;
+    }
+
+    /**
+     * Pairs a player nobody else was matched with against a bot.
+     */
+    private void startBotGame(Player player) {
+        Player bot;
+        try {
+            bot = newBot();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Failed to create a bot for " + player.getUsername() + ": " + e.getMessage());
+            matchmaker.enqueue(player);
             return;
         }
+        System.out.printf("No partner for %s; matched with %s. %d player(s) given a bot so far.%n",
+                player, bot, matchmaker.getFallbackPlayers());
+        startGame(UUID.randomUUID(), player, bot);
+    }
+
+    private Player newBot() {
+        while (true) {
+            String name = idleBots.poll();
+            if (name == null) {
+                name = BotClient.NAME_PREFIX + botCount.incrementAndGet();
+            }
+            // Skip names still playing a game recovered from before a restart
+            if (!allPlayers.containsKey(name)) {
+                Player bot = loadPlayer(name, newBotClient(name));
+                if (allPlayers.putIfAbsent(name, bot) == null) {
+                    failureDetector.reset(name);
+                    failureDetector.heartbeat(name);
+                    return bot;
+                }
+            }
+        }
+    }
+
+    private BotClient newBotClient(String name) {
+        return new BotClient(name, this, botScheduler, this::releaseBot);
+    }
+
+    private void releaseBot(String name) {
+        Player bot = allPlayers.get(name);
+        if (bot != null && allPlayers.remove(name, bot)) {
+            failureDetector.reset(name);
+            idleBots.push(name);
+        }
+    }
+
+    private void cancelWaiting(String username) {
+        Player player = allPlayers.get(username);
+        if (player != null && player.getGameId() == null) {
+            matchmaker.cancel(player);
+            evictPlayer(player);
+        }
+    }
+
+    private boolean isTurnOf(GameSession game, Player player, boolean gameOver) {
+        return !gameOver && game.getCurrentPlayer() == player;
+    }
+
+    /**
+     * Builds the updates telling both players about the move that was just made, with the
+     * turn and status that follow it, and queues them to be sent once the move is durable.
+     *
+     * @param game    The game the move was made in.
+     * @param row     The row of the move.
+     * @param col     The column of the move.
+     * @param symbol  The symbol placed.
+     * @param status   The status line to show.
+     * @param gameOver Whether the move ended the game, making the status its result.
+     * @param afterSync Collects the work to run once the journal holds the move.
+     */
+    private void sendMove(GameSession game, int row, int col, char symbol, GameStatus status, boolean gameOver,
+                          List<Runnable> afterSync) {
+        GameId gameId = GameId.of(game.getGameId());
+        for (Player player : new Player[]{game.getPlayer1(), game.getPlayer2()}) {
+            GameUpdate update = withTurnClock(game, GameUpdate.move(gameId, game.getMoveSeq(), row, col, symbol,
+                    isTurnOf(game, player, gameOver), status, gameOver));
+            afterSync.add(() -> dispatcher.dispatch(player, c -> c.applyUpdate(update)));
+        }
+    }
+
+    /**
+     * Sends a player the turn and status for their game without touching the board.
+     *
+     * @param game    The game the update belongs to.
+     * @param player  The player to notify.
+     * @param status   The status line to show.
+     * @param gameOver Whether the game has ended, making the status its result.
+     */
+    private void sendStatus(GameSession game, Player player, GameStatus status, boolean gameOver) {
+        GameUpdate update = withTurnClock(game, GameUpdate.status(GameId.of(game.getGameId()), game.getMoveSeq(),
+                isTurnOf(game, player, gameOver), status, gameOver));
+        dispatcher.dispatch(player, c -> c.applyUpdate(update));
+    }
 
-        // Attempt the move and handle the outcome
-        boolean moveSuccessful = currentGame.makeMove(row, col, currentPlayer.getSymbol());
-        if (moveSuccessful) {
-            // Notify players of board update
-            char[][] board = currentGame.getBoard();
-            currentGame.getPlayer1().getClient().updateGameBoard(board);
-            currentGame.getPlayer2().getClient().updateGameBoard(board);
+    /**
+     * Builds a player's status update under the game's monitor and leaves it in
+     * {@code afterSync} to be sent once the journal has the records behind it.
+     */
+    private void sendStatus(GameSession game, Player player, GameStatus status, boolean gameOver,
+                            List<Runnable> afterSync) {
+        GameUpdate update = withTurnClock(game, GameUpdate.status(GameId.of(game.getGameId()), game.getMoveSeq(),
+                isTurnOf(game, player, gameOver), status, gameOver));
+        afterSync.add(() -> dispatcher.dispatch(player, c -> c.applyUpdate(update)));
+    }
 
-            // Handle game outcome
-            if (currentGame.isWinningMove(row, col)) {
-                String winMessage = String.format("%s wins!", currentGame.getOpponentByUsername(currentGame.getCurrentPlayer().getUsername()).getUsername());
-                currentGame.getOpponentByUsername(currentGame.getCurrentPlayer().getUsername()).win();
-                currentGame.getCurrentPlayer().lost();
+    /**
+     * Sends the same status or outcome to both players of a game.
+     */
+    private void sendStatus(GameSession game, GameStatus status, boolean gameOver) {
+        sendStatus(game, game.getPlayer1(), status, gameOver);
+        sendStatus(game, game.getPlayer2(), status, gameOver);
+    }
 
+    /**
+     * Sends a player the full board, for clients that have missed moves or are rejoining.
+     */
+    private void sendSnapshot(GameSession game, Player player, GameStatus status) {
+        GameUpdate update = withTurnClock(game, GameUpdate.snapshot(GameId.of(game.getGameId()), game.getMoveSeq(),
+                game.getBoard(), isTurnOf(game, player, false), status));
+        dispatcher.dispatch(player, c -> c.applyUpdate(update));
+    }
 
-                currentGame.getPlayer1().getClient().notifyGameOutcome(winMessage);
-                currentGame.getPlayer2().getClient().notifyGameOutcome(winMessage);
+    /**
+     * Feeds a failed callback into the normal disconnect handling.
+     * Failures from a client the player has since replaced are ignored.
+     */
+    private void handleCallbackFailure(Player player, ClientInterface client, RemoteException e) {
+        System.err.println("Callback to " + player.getUsername() + " failed: " + e.getMessage());
+        if (player.getClient() != client) {
+            return;
+        }
 
-                // Log player points
-                System.out.printf("%s's points: %d%n", currentGame.getPlayer1().getUsername(), currentGame.getPlayer1().getPoints());
-                System.out.printf("%s's points: %d%n", currentGame.getPlayer2().getUsername(), currentGame.getPlayer2().getPoints());
+        UUID gameId = player.getGameId();
+        if (gameId == null) {
+            matchmaker.cancel(player);
+            return;
+        }
+        try {
+            handleClientDisconnect(GameId.of(gameId), player.getUsername());
+        } catch (RemoteException ex) {
+            System.err.println("Failed to handle disconnection for: " + player.getUsername() + ". Error: " + ex.getMessage());
+        }
+    }
 
-                // Clear game from players
-                currentGame.getPlayer1().setGameId(null);
-                currentGame.getPlayer2().setGameId(null);
+    /**
+     * Called by a transport that sees a player's connection close, so the loss is handled
+     * straight away rather than after the failure detector grows suspicious.
+     */
+    void handleConnectionLost(String username, ClientInterface client) {
+        Player player = allPlayers.get(username);
+        if (player != null) {
+            handleCallbackFailure(player, client, new RemoteException("Connection closed"));
+        }
+    }
 
-                activeGames.remove(currentGame.getGameId());
-            } else if (currentGame.isDraw()) {
-                // Handle draw condition
-                String drawMessage = "The game is a draw!";
-                currentGame.getPlayer1().getClient().notifyGameOutcome(drawMessage);
-                currentGame.getPlayer2().getClient().notifyGameOutcome(drawMessage);
+    /**
+     * Looks up an active game, tolerating a null ID from clients that are not in a game.
+     *
+     * @param gameId The game ID sent by the client, possibly null.
+     * @return The active game session, or null if there is none.
+     */
+    private GameSession findGame(GameId gameId) {
+        return gameId == null ? null : activeGames.get(GameId.toUuid(gameId));
+    }
+
+    private GameSession findGame(UUID gameId) {
+        return gameId == null ? null : activeGames.get(gameId);
+    }
 
-                // Clear game from players
-                currentGame.getPlayer1().setGameId(null);
-                currentGame.getPlayer2().setGameId(null);
+    /**
+     * Checks, while holding the game's monitor, that the game has not already
+     * been finished by a concurrent move, quit or disconnect.
+     */
+    private boolean isActive(GameSession game) {
+        return activeGames.get(game.getGameId()) == game;
+    }
 
-                activeGames.remove(currentGame.getGameId());
-            } else {
-                // Notify players of turn
-                String turnMessage = String.format("It's %s's turn (%c).", currentGame.getCurrentPlayer().toString(), currentGame.getCurrentPlayer().getSymbol());
-                currentGame.getPlayer1().getClient().switchTurn();
-                currentGame.getPlayer2().getClient().switchTurn();
-                currentGame.getPlayer1().getClient().notifyStatus(turnMessage);
-                currentGame.getPlayer2().getClient().notifyStatus(turnMessage);
+    @Override
+    public void makeMove(GameId gameId, String username, int row, int col) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            failureDetector.heartbeat(username);
+            GameSession currentGame = findGame(gameId);
+            if (currentGame == null) {
+                return;
+            }
+
+            long lsn = 0;
+            List<Runnable> afterSync = new ArrayList<>();
+            long waitStart = System.nanoTime();
+            synchronized (currentGame) {
+                metrics.recordLockWait(waitStart);
+                // Only the player whose turn it is may move, whoever sent the call
+                if (isActive(currentGame) && username.equals(currentGame.getCurrentPlayer().getUsername())) {
+                    lsn = makeMove(currentGame, row, col, afterSync);
+                }
             }
+            completeMove(currentGame, lsn, afterSync);
+        } finally {
+            metrics.recordCall("makeMove", start);
         }
     }
 
-    public synchronized void sendChatMessage(UUID gameId, String username, String message) throws RemoteException {
-        GameSession game = activeGames.get(gameId);
+    /**
+     * Plays a move while holding the game's monitor. The move, and the outcome if it ends
+     * the game, are journaled before the board changes. What the players see of it, the
+     * updates, points and archive entry, waits in {@code afterSync} until the journal has
+     * them on disk, so a crash never shows or pays out a move that recovery brings back.
+     *
+     * @param afterSync Collects the work to run by {@link #completeMove} once the monitor is released.
+     * @return The journal sequence number of the last record written, or 0 if the move was rejected.
+     */
+    private long makeMove(GameSession currentGame, int row, int col, List<Runnable> afterSync) {
+        Player currentPlayer = currentGame.getCurrentPlayer();
 
-        // Ensure players are connected before proceeding
-        if (!isPlayerConnected(game, game.getPlayer1()) || !isPlayerConnected(game, game.getPlayer2())) {
-            return;
+        // Check connectivity for both players and handle disconnections
+        if (!isPlayerConnected(currentGame, currentGame.getPlayer1(), afterSync)
+                || !isPlayerConnected(currentGame, currentGame.getPlayer2(), afterSync)) {
+            return 0;
+        }
+        char symbol = currentPlayer.getSymbol();
+        if (!currentGame.isFree(row, col)) {
+            return 0;
+        }
+
+        // Work out the outcome first, so the move and its outcome go to the journal together
+        boolean won = currentGame.isWinningMove(row, col, symbol);
+        GameStatus outcome = won ? GameStatus.win(currentPlayer) : currentGame.isLastMove() ? GameStatus.DRAW : null;
+        int seq = currentGame.getMoveSeq() + 1;
+        long lsn = outcome == null
+                ? journal.appendMove(currentGame.getGameId(), seq, row, col, symbol)
+                : journal.appendMove(currentGame.getGameId(), seq, row, col, symbol, outcome.render());
+        currentGame.makeMove(row, col, symbol);
+
+        if (outcome == null) {
+            // The next player's time starts now
+            startTurnClock(currentGame);
+            sendMove(currentGame, row, col, symbol, GameStatus.turn(currentGame.getCurrentPlayer()), false, afterSync);
+            return lsn;
+        }
+
+        stopTurnClock(currentGame);
+        sendMove(currentGame, row, col, symbol, outcome, true, afterSync);
+
+        // Clear game from players
+        currentGame.getPlayer1().setGameId(null);
+        currentGame.getPlayer2().setGameId(null);
+        activeGames.remove(currentGame.getGameId());
+
+        Player winner = won ? currentPlayer : null;
+        afterSync.add(() -> payOut(currentGame, winner));
+        return lsn;
+    }
+
+    /**
+     * Waits, outside the game lock, for a move to reach disk, sharing the sync with other
+     * games, then runs the work the move left behind.
+     *
+     * @param lsn       The journal sequence number returned for the move, or 0 if there was none.
+     * @param afterSync The work collected while the move was made.
+     */
+    private void completeMove(GameSession game, long lsn, List<Runnable> afterSync) {
+        if (lsn > 0) {
+            long syncStart = System.nanoTime();
+            try {
+                journal.awaitDurable(lsn);
+                metrics.recordJournalWait(syncStart);
+            } catch (IOException e) {
+                System.err.println("Move in game " + game.getGameId() + " may not be durable: " + e.getMessage());
+            }
+        }
+        for (Runnable work : afterSync) {
+            work.run();
+        }
+    }
+
+    /**
+     * Gives out the points of a game finished by a move and archives it.
+     *
+     * @param winner The winning player, or null for a draw.
+     */
+    private void payOut(GameSession game, Player winner) {
+        if (winner == null) {
+            game.getPlayer1().draw();
+            game.getPlayer2().draw();
+        } else {
+            winner.win();
+            game.getOpponentByUsername(winner.getUsername()).lost();
+        }
+        archiveGame(game, winner);
+
+        // Log player points
+        System.out.printf("%s's points: %d%n", game.getPlayer1().getUsername(), game.getPlayer1().getPoints());
+        System.out.printf("%s's points: %d%n", game.getPlayer2().getUsername(), game.getPlayer2().getPoints());
+    }
+
+    /**
+     * Queues a finished game for the replay archive and passes on its points.
+     *
+     * @param game   The game that has just ended.
+     * @param winner The winning player, or null for a draw.
+     */
+    private void archiveGame(GameSession game, Player winner) {
+        byte outcome = winner == null ? GameArchive.DRAW
+                : winner == game.getPlayer1() ? GameArchive.PLAYER1_WON : GameArchive.PLAYER2_WON;
+        // The archive's compact form only holds classic games
+        if (game.getSize() == GameSession.CLASSIC_SIZE) {
+            int player1Id = game.getPlayer1().getId();
+            int player2Id = game.getPlayer2().getId();
+            short[] moves = game.getMoves();
+            archiveWriter.execute(() -> {
+                try {
+                    archive.append(player1Id, player2Id, moves, outcome);
+                } catch (IOException e) {
+                    System.err.println("Failed to archive game " + game.getGameId() + ": " + e.getMessage());
+                }
+            });
         }
 
-        // Format and send the chat message
-        String formattedMessage = String.format("%s: %s", game.getPlayerByUsername(username), message);
-        game.addChatMessage(formattedMessage);
-        broadcastChatMessages(game);
+        if (replicator != null) {
+            replicator.points(game.getPlayer1().getUsername(), game.getPlayer1().getPoints());
+            replicator.points(game.getPlayer2().getUsername(), game.getPlayer2().getPoints());
+        }
+        if (coordinator != null) {
+            reportResult(game, winner);
+        }
+    }
+
+    /**
+     * Stops the turn clocks and grace periods, when the server shuts down.
+     */
+    void stopTimers() {
+        timingWheel.stop();
+        timeoutExecutor.shutdownNow();
+    }
+
+    /**
+     * Waits for the games queued for the archive to be written, when the server shuts down.
+     */
+    void flushArchive() {
+        archiveWriter.shutdown();
+        try {
+            if (!archiveWriter.awaitTermination(5, TimeUnit.SECONDS)) {
+                System.err.println("Gave up waiting for games to reach the archive");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends the points of a finished game to the coordinator, off the game lock.
+     * The players' next game may be on another shard, so they are dropped from this one.
+     */
+    private void reportResult(GameSession game, Player winner) {
+        Player player1 = game.getPlayer1();
+        Player player2 = game.getPlayer2();
+        int delta1 = winner == null ? Player.DRAW_POINTS : winner == player1 ? Player.WIN_POINTS : -Player.LOSS_POINTS;
+        int delta2 = winner == null ? Player.DRAW_POINTS : winner == player2 ? Player.WIN_POINTS : -Player.LOSS_POINTS;
+        GameId gameId = GameId.of(game.getGameId());
+        coordinatorExecutor.execute(() -> {
+            try {
+                coordinator.recordResult(gameId, player1.getUsername(), delta1, player2.getUsername(), delta2);
+            } catch (RemoteException e) {
+                System.err.println("Failed to report the result of game " + gameId + ": " + e.getMessage());
+            }
+        });
+        evictPlayer(player1);
+        evictPlayer(player2);
+    }
+
+    public void sendChatMessage(GameId gameId, String username, String message) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            failureDetector.heartbeat(username);
+            GameSession game = findGame(gameId);
+            if (game == null) {
+                return;
+            }
+
+            List<Runnable> afterSync = new ArrayList<>();
+            long waitStart = System.nanoTime();
+            try {
+                synchronized (game) {
+                    metrics.recordLockWait(waitStart);
+                    // Ensure players are connected before proceeding
+                    if (!isActive(game) || !isPlayerConnected(game, game.getPlayer1(), afterSync)
+                            || !isPlayerConnected(game, game.getPlayer2(), afterSync)) {
+                        return;
+                    }
+
+                    // Format and send the chat message
+                    String formattedMessage = String.format("%s: %s", game.getPlayerByUsername(username), message);
+                    int index = game.addChatMessage(formattedMessage);
+                    journal.appendChat(game.getGameId(), index, formattedMessage);
+                    broadcastChatMessage(game, index, formattedMessage);
+                }
+            } finally {
+                // A disconnect found on the way may have ended the game
+                completeMove(game, 0, afterSync);
+            }
+        } finally {
+            metrics.recordCall("sendChatMessage", start);
+        }
     }
 
     /**
      * Checks if the player's client is connected and handles disconnection if not.
+     * This asks the failure detector and makes no remote call.
      *
-     * @param game   The current game session.
-     * @param player The player to check connectivity for.
+     * @param game      The current game session.
+     * @param player    The player to check connectivity for.
+     * @param afterSync Collects the work left by a game the disconnect ends.
      * @return true if the player is connected, false otherwise.
      */
-    private boolean isPlayerConnected(GameSession game, Player player) throws RemoteException {
-        try {
-            player.getClient().heartbeat();
-            return true;
-        } catch (RemoteException e) {
-            handleClientDisconnect(game.getGameId(), player.getUsername());
+    private boolean isPlayerConnected(GameSession game, Player player, List<Runnable> afterSync) {
+        if (failureDetector.isSuspected(player.getUsername())) {
+            handleClientDisconnect(game, player.getUsername(), afterSync);
             return false;
         }
+        return true;
     }
 
     /**
-     * Broadcasts the chat history to all players in the game session.
+     * Sends a newly added chat message to all players in the game session.
      *
-     * @param game The current game session.
-     * @throws RemoteException If an error occurs during remote method invocation.
+     * @param game    The current game session.
+     * @param index   The index the message was stored at.
+     * @param message The formatted message.
      */
-    private void broadcastChatMessages(GameSession game) throws RemoteException {
-        String chatHistory = String.join("\n", game.getChatMessages());
-        game.getPlayer1().getClient().receiveChatMessage(chatHistory);
-        game.getPlayer2().getClient().receiveChatMessage(chatHistory);
+    private void broadcastChatMessage(GameSession game, int index, String message) {
+        dispatcher.dispatch(game.getPlayer1(), c -> c.receiveChatMessage(index, message));
+        dispatcher.dispatch(game.getPlayer2(), c -> c.receiveChatMessage(index, message));
     }
 
     @Override
-    public synchronized void quitGame(UUID gameId, String username) throws RemoteException {
-        // Validate gameId and handle null case
-        if (gameId == null) {
-            waitingPlayers.poll();
-            return;
+    public void quitGame(GameId gameId, String username) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            // The player is leaving, so stop tracking their client
+            failureDetector.reset(username);
+
+            // Validate gameId and handle null case
+            if (gameId == null) {
+                cancelWaiting(username);
+                return;
+            }
+
+            // Retrieve game session and opponent
+            GameSession game = findGame(gameId);
+            if (game == null) {
+                return;
+            }
+
+            long lsn = 0;
+            List<Runnable> afterSync = new ArrayList<>();
+            long waitStart = System.nanoTime();
+            try {
+                synchronized (game) {
+                    metrics.recordLockWait(waitStart);
+                    if (isActive(game)) {
+                        lsn = quitGame(game, username, afterSync);
+                    }
+                }
+            } finally {
+                completeMove(game, lsn, afterSync);
+            }
+        } finally {
+            metrics.recordCall("quitGame", start);
         }
+    }
 
-        // Retrieve game session and opponent
-        GameSession game = activeGames.get(gameId);
+    /**
+     * Ends a game its player has left, while holding the game's monitor. The outcome is
+     * journaled first; the opponent's update, the points and the archive entry wait in
+     * {@code afterSync} until it is on disk, as for a move that ends a game.
+     *
+     * @return The journal sequence number of the outcome.
+     */
+    private long quitGame(GameSession game, String username, List<Runnable> afterSync) throws RemoteException {
         Player opponent = game.getOpponentByUsername(username);
 
         // Validate opponent existence
         if (opponent == null) {
             System.err.println("Error: Opponent not found for provided username: " + username);
             System.exit(0);
-            return;
+            return 0;
         }
 
         // Ensure opponent's client is connected
-        try {
-            opponent.getClient().heartbeat();
-        } catch (RemoteException e) {
-            handleClientDisconnect(gameId, opponent.getUsername());
-            throw new RemoteException("Opponent's client is not reachable. Disconnect handled.", e);
+        if (!isPlayerConnected(game, opponent, afterSync)) {
+            throw new RemoteException("Opponent's client is not reachable. Disconnect handled.");
         }
 
-        // Update game status and player ranks
-        game.getPlayerByUsername(username).lost();
-        opponent.win();
-        updatePlayerRanks();
+        // Journal the outcome, then clear game data
+        stopTurnClock(game);
+        long lsn = journal.appendOutcome(game.getGameId(), GameStatus.OPPONENT_LEFT.render());
+        sendStatus(game, opponent, GameStatus.OPPONENT_LEFT, true, afterSync);
+        game.getPlayer1().setGameId(null);
+        game.getPlayer2().setGameId(null);
+        activeGames.remove(game.getGameId());
 
-        // Log game outcome and player points
-        System.out.printf("%s won! because %s left.%n", opponent.getUsername(), username);
-        System.out.printf("%s points are %d%n", game.getPlayer1(), game.getPlayer1().getPoints());
-        System.out.printf("%s points are %d%n", game.getPlayer2(), game.getPlayer2().getPoints());
+        Player quitter = game.getPlayerByUsername(username);
+        afterSync.add(() -> {
+            // Update game status; ranks follow the points automatically
+            quitter.lost();
+            opponent.win();
+            archiveGame(game, opponent);
+
+            // Log game outcome and player points
+            System.out.printf("%s won! because %s left.%n", opponent.getUsername(), username);
+            System.out.printf("%s points are %d%n", game.getPlayer1(), game.getPlayer1().getPoints());
+            System.out.printf("%s points are %d%n", game.getPlayer2(), game.getPlayer2().getPoints());
+            evictPlayer(quitter);
+        });
+        return lsn;
+    }
 
-        // Notify opponent and clear game data safely
+    public void handleClientReconnect(String username, ClientInterface client) {
+        long start = System.nanoTime();
         try {
-            opponent.getClient().notifyGameOutcome("Opponent has left the game. You win!");
-        } catch (RemoteException e) {
-            System.err.println("Error: Unable to notify opponent about game outcome. " + e.getMessage());
-        }
+            if (resume(username, client)) {
+                return;
+            }
 
-        // Safely clear game data
-        try {
-            game.getPlayer1().setGameId(null);
-        } catch (Exception e) {
-            System.err.println("Error: Unable to clear gameId for player: " + game.getPlayer1().getUsername() + ". " + e.getMessage());
+            try {
+                registerPlayer(username, client);
+            } catch (RemoteException e) {
+                System.err.println("Failed to register player " + username + ": " + e.getMessage());
+            }
+        } finally {
+            metrics.recordCall("handleClientReconnect", start);
         }
+    }
 
+    @Override
+    public boolean resumePlayer(String username, ClientInterface client) {
+        long start = System.nanoTime();
         try {
-            game.getPlayer2().setGameId(null);
-        } catch (Exception e) {
-            System.err.println("Error: Unable to clear gameId for player: " + game.getPlayer2().getUsername() + ". " + e.getMessage());
+            return resume(username, client);
+        } finally {
+            metrics.recordCall("handleClientReconnect", start);
         }
-
-        activeGames.remove(game.getGameId());
     }
 
-    public void updatePlayerRanks() {
-        // Validate that there are players to rank
-        if (allPlayers == null || allPlayers.isEmpty()) {
-            throw new IllegalStateException("No players available to update ranks.");
-        }
-
-        // Sort players and update ranks efficiently using streams
-        AtomicInteger rank = new AtomicInteger(1);
-        allPlayers.values().stream()
-                .sorted(Comparator.comparingInt(Player::getPoints).reversed())
-                .forEach(player -> player.setRank(rank.getAndIncrement()));
-    }
+    /**
+     * Puts a returning player back into the game they disconnected from.
+     *
+     * @return false if the player has no game waiting for them.
+     */
+    private boolean resume(String username, ClientInterface client) {
+        // A new client starts a fresh arrival history
+        failureDetector.reset(username);
+        failureDetector.heartbeat(username);
 
-    public synchronized void handleClientReconnect(String username, ClientInterface client) {
         Player reconnectPlayer = allPlayers.get(username);
-        Timer timer = disconnectPlayers.remove(reconnectPlayer);
+        GameSession game = reconnectPlayer == null ? null : findGame(reconnectPlayer.getGameId());
+        if (game == null) {
+            return false;
+        }
 
-        if (timer != null) {
-            timer.cancel();
+        long waitStart = System.nanoTime();
+        synchronized (game) {
+            metrics.recordLockWait(waitStart);
+            // The grace period timeout is removed under the game's monitor so it cannot fire mid-reconnect
+            TimingWheel.Timeout timeout = disconnectPlayers.remove(reconnectPlayer);
+            if (timeout == null) {
+                return false;
+            }
+            timeout.cancel();
             reconnectPlayer.setClient(client);
-            GameSession game = activeGames.get(reconnectPlayer.getGameId());
+            game.setPlayer(reconnectPlayer);
+            journal.appendReconnect(game.getGameId(), username);
+
+            // Resume both players with the board and the current turn, which starts afresh
+            startTurnClock(game);
+            GameStatus turnStatus = GameStatus.turn(game.getCurrentPlayer());
+            sendSnapshot(game, reconnectPlayer, turnStatus);
+            sendStatus(game, game.getOpponentByUsername(username), turnStatus, false);
+
+            // Only the returning client needs the chat history; the opponent kept theirs
+            List<String> chatHistory = game.getChatMessages();
+            int nextChatIndex = game.getChatHistory().getNextIndex();
+            dispatcher.dispatch(reconnectPlayer, c -> c.receiveChatHistory(chatHistory, nextChatIndex));
+            return true;
+        }
+    }
 
-            if (game != null) {
-                try {
-                    reconnectPlayer.getClient().updateGameBoard(game.getBoard());
-                    reconnectPlayer.getClient().setGameId(game.getGameId());
-                    game.setPlayer(reconnectPlayer);
-
-                    // Construct chat history
-                    String chatHistory = String.join("\n", game.getChatMessages());
-
-                    // Update chat for all players
-                    game.getPlayer1().getClient().receiveChatMessage(chatHistory);
-                    game.getPlayer2().getClient().receiveChatMessage(chatHistory);
-
-                    // Notify about the current turn
-                    game.getCurrentPlayer().getClient().setTurn();
-                    reconnectPlayer.getClient().notifyStatus(
-                            String.format("It's %s's turn. (%c)",
-                                    game.getCurrentPlayer().toString(),
-                                    game.getCurrentPlayer().getSymbol())
-                    );
-                } catch (RemoteException e) {
-                    System.err.println("Failed to update the client of " + username + ": " + e.getMessage());
-                }
+    @Override
+    public void requestSnapshot(GameId gameId, String username) {
+        long start = System.nanoTime();
+        try {
+            failureDetector.heartbeat(username);
+            GameSession game = findGame(gameId);
+            if (game == null) {
+                return;
             }
-        } else {
-            try {
-                registerPlayer(username, client);
-            } catch (RemoteException e) {
-                System.err.println("Failed to register player " + username + ": " + e.getMessage());
+
+            long waitStart = System.nanoTime();
+            synchronized (game) {
+                metrics.recordLockWait(waitStart);
+                if (isActive(game)) {
+                    sendSnapshot(game, game.getPlayerByUsername(username), null);
+                }
             }
+        } finally {
+            metrics.recordCall("requestSnapshot", start);
         }
     }
 
     @Override
-    public synchronized char[][] getBoard(UUID gameId) {
-        // Validate gameId and handle potential null case
-        if (gameId == null) {
-            throw new IllegalArgumentException("Game ID cannot be null.");
-        }
+    public Board getBoard(GameId gameId) {
+        long start = System.nanoTime();
+        try {
+            // Validate gameId and handle potential null case
+            if (gameId == null) {
+                throw new IllegalArgumentException("Game ID cannot be null.");
+            }
 
-        // Retrieve and return the game board, handling potential null game session
-        GameSession game = activeGames.get(gameId);
-        if (game == null) {
-            throw new IllegalStateException("No active game found for the provided Game ID: " + gameId);
+            // Retrieve and return the game board, handling potential null game session
+            GameSession game = findGame(gameId);
+            if (game == null) {
+                throw new IllegalStateException("No active game found for the provided Game ID: " + gameId);
+            }
+            long waitStart = System.nanoTime();
+            synchronized (game) {
+                metrics.recordLockWait(waitStart);
+                return game.getBoard();
+            }
+        } finally {
+            metrics.recordCall("getBoard", start);
         }
-        return game.getBoard();
     }
 
     public void endGameAsDraw(GameSession game) {
-        String message = "Match Drawn";
-        Timer p1 = null;
-        Timer p2 = null;
+        List<Runnable> afterSync = new ArrayList<>();
+        endGameAsDraw(game, afterSync);
+        completeMove(game, 0, afterSync);
+    }
+
+    private void endGameAsDraw(GameSession game, List<Runnable> afterSync) {
+        synchronized (game) {
+            if (isActive(game)) {
+                drawGame(game, afterSync);
+            }
+        }
+    }
+
+    /**
+     * Draws a game while holding its monitor. The outcome is journaled first; the updates,
+     * points and archive entry are queued on {@code afterSync} behind their own wait for
+     * the journal, so they run after whatever the caller is waiting for.
+     */
+    private void drawGame(GameSession game, List<Runnable> afterSync) {
+        List<Runnable> afterOutcome = new ArrayList<>();
+        TimingWheel.Timeout p1 = null;
+        TimingWheel.Timeout p2 = null;
+        stopTurnClock(game);
 
         // Notify Player 1 and handle potential issues
         try {
@@ -329,9 +1185,7 @@ public class TicTacToeServer extends UnicastRemoteObject implements ServerInterf
             if (p1 != null) {
                 p1.cancel();
             }
-            game.getPlayer1().getClient().notifyGameOutcome(message);
-        } catch (RemoteException e) {
-            System.err.println("Failed to notify " + game.getPlayer1().getUsername() + " about the game outcome: " + e.getMessage());
+            sendStatus(game, game.getPlayer1(), GameStatus.MATCH_DRAWN, true, afterOutcome);
         } catch (Exception e) {
             System.err.println("Unexpected error while handling Player 1 end game: " + e.getMessage());
         }
@@ -342,19 +1196,12 @@ public class TicTacToeServer extends UnicastRemoteObject implements ServerInterf
             if (p2 != null) {
                 p2.cancel();
             }
-            game.getPlayer2().getClient().notifyGameOutcome(message);
-        } catch (RemoteException e) {
-            System.err.println("Failed to notify " + game.getPlayer2().getUsername() + " about the game outcome: " + e.getMessage());
+            sendStatus(game, game.getPlayer2(), GameStatus.MATCH_DRAWN, true, afterOutcome);
         } catch (Exception e) {
             System.err.println("Unexpected error while handling Player 2 end game: " + e.getMessage());
         }
 
-        // Update game status and points
-        game.getPlayer1().draw();
-        game.getPlayer2().draw();
-        System.out.println(game.getPlayer1().toString() + " points are " + game.getPlayer1().getPoints());
-        System.out.println(game.getPlayer2().toString() + " points are " + game.getPlayer2().getPoints());
-        updatePlayerRanks();
+        long lsn = journal.appendOutcome(game.getGameId(), GameStatus.MATCH_DRAWN.render());
 
         // Clean up game data safely
         try {
@@ -364,89 +1211,248 @@ public class TicTacToeServer extends UnicastRemoteObject implements ServerInterf
         } catch (Exception e) {
             System.err.println("Error during game cleanup: " + e.getMessage());
         }
+
+        boolean evict1 = p1 != null;
+        boolean evict2 = p2 != null;
+        afterOutcome.add(() -> {
+            // Update game status and points
+            game.getPlayer1().draw();
+            game.getPlayer2().draw();
+            archiveGame(game, null);
+            System.out.println(game.getPlayer1().toString() + " points are " + game.getPlayer1().getPoints());
+            System.out.println(game.getPlayer2().toString() + " points are " + game.getPlayer2().getPoints());
+
+            // Players whose grace period ran out are gone
+            if (evict1) {
+                evictPlayer(game.getPlayer1());
+            }
+            if (evict2) {
+                evictPlayer(game.getPlayer2());
+            }
+        });
+        afterSync.add(() -> completeMove(game, lsn, afterOutcome));
     }
 
 
-    public void handleClientDisconnect(UUID gameId, String username) throws RemoteException {
-        // Early exit if gameId is null
-        if (gameId == null) {
-            waitingPlayers.poll();
-            return;
+    public void handleClientDisconnect(GameId gameId, String username) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            // Early exit if gameId is null
+            if (gameId == null) {
+                cancelWaiting(username);
+                return;
+            }
+
+            GameSession game = findGame(gameId);
+            if (game == null) {
+                return;
+            }
+
+            List<Runnable> afterSync = new ArrayList<>();
+            long waitStart = System.nanoTime();
+            synchronized (game) {
+                metrics.recordLockWait(waitStart);
+                if (isActive(game)) {
+                    handleClientDisconnect(game, username, afterSync);
+                }
+            }
+            completeMove(game, 0, afterSync);
+        } finally {
+            metrics.recordCall("handleClientDisconnect", start);
         }
+    }
 
-        GameSession game = activeGames.get(gameId);
+    /**
+     * @param afterSync Collects the work left by a game the disconnect ends.
+     */
+    private void handleClientDisconnect(GameSession game, String username, List<Runnable> afterSync) {
         Player disconnectedPlayer = game.getPlayerByUsername(username);
         System.out.println(disconnectedPlayer.getUsername() + " disconnected!");
 
         // Check if the opponent is already in the disconnectPlayers map
         boolean opponentIsDisconnecting = disconnectPlayers.containsKey(game.getOpponentByUsername(username));
         if (opponentIsDisconnecting) {
-            endGameAsDraw(game);
+            endGameAsDraw(game, afterSync);
+            // The draw evicts the opponent with their grace period; this player left without one
+            afterSync.add(() -> evictPlayer(disconnectedPlayer));
             return;
         }
 
         // Handle the disconnecting player
         if (!disconnectPlayers.containsKey(disconnectedPlayer)) {
-            Timer timer = new Timer();
-            timer.schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    endGameAsDraw(game);
+            startGracePeriod(game, disconnectedPlayer, GRACE_PERIOD_MILLIS);
+            journal.appendDisconnect(game.getGameId(), username);
+            // The game waits for the player, so no one's time runs meanwhile
+            stopTurnClock(game);
+
+            // Freeze the opponent's client until the player returns
+            dispatcher.dispatch(game.getOpponentByUsername(username), c -> c.freeze());
+        }
+    }
+
+    /**
+     * Gives a disconnected player time to come back before the game is drawn.
+     *
+     * @param game        The game the player is in.
+     * @param player      The disconnected player.
+     * @param delayMillis How long the player has left to reconnect.
+     */
+    private void startGracePeriod(GameSession game, Player player, long delayMillis) {
+        TimingWheel.Timeout timeout = timingWheel.schedule(expired -> timeoutExecutor.execute(() -> {
+            List<Runnable> afterSync = new ArrayList<>();
+            synchronized (game) {
+                // Skip if the player reconnected while this task was waiting for the monitor
+                if (disconnectPlayers.get(player) == expired) {
+                    endGameAsDraw(game, afterSync);
                 }
-            }, 30000); // 30 seconds
+            }
+            completeMove(game, 0, afterSync);
+        }), delayMillis, TimeUnit.MILLISECONDS);
 
-            disconnectPlayers.put(disconnectedPlayer, timer);
+        disconnectPlayers.put(player, timeout);
+    }
 
-            // Attempt to freeze the opponent's client and log if unsuccessful
-            try {
-                game.getOpponentByUsername(username).getClient().freeze();
-            } catch (RemoteException e) {
-                System.err.println("Failed to freeze the client of "
-                        + game.getOpponentByUsername(username).getUsername()
-                        + ": " + e.getMessage());
+    /**
+     * Gives the player to move the full turn time, replacing the clock of the previous move.
+     * Called while holding the game's monitor.
+     */
+    private void startTurnClock(GameSession game) {
+        if (TURN_MILLIS <= 0) {
+            return;
+        }
+        TimingWheel.Timeout timeout = timingWheel.schedule(expired -> timeoutExecutor.execute(() -> {
+            long lsn = 0;
+            List<Runnable> afterSync = new ArrayList<>();
+            synchronized (game) {
+                // Skip if a move or the end of the game replaced this clock while it waited for the monitor
+                if (turnClocks.get(game) == expired && isActive(game)) {
+                    lsn = playTimeoutMove(game, afterSync);
+                }
             }
+            completeMove(game, lsn, afterSync);
+        }), TURN_MILLIS, TimeUnit.MILLISECONDS);
+
+        TimingWheel.Timeout previous = turnClocks.put(game, timeout);
+        if (previous != null) {
+            previous.cancel();
         }
     }
 
-    private boolean checkClient(Player player){
-        try{
-            player.getClient().heartbeat();
-            return true;
-        }catch(RemoteException e){
-            System.err.println("Heartbeat failed for player: " + player.getUsername() + ". Error: " + e.getMessage());
-            return false;
+    private void stopTurnClock(GameSession game) {
+        TimingWheel.Timeout timeout = turnClocks.remove(game);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    private GameUpdate withTurnClock(GameSession game, GameUpdate update) {
+        TimingWheel.Timeout timeout = update.isGameOver() ? null : turnClocks.get(game);
+        if (timeout == null) {
+            return update;
         }
+        return update.withTurnMillis((int) Math.max(1, timeout.getDelay(TimeUnit.MILLISECONDS)));
     }
 
-    public void heartbeat(){
-        // Implementation of the heartbeat method (if needed)
+    /**
+     * Plays the move of a player whose time ran out, exactly as if they had sent it.
+     * Runs on a game-timeout thread while holding the game's monitor.
+     *
+     * @return The journal sequence number of the move, or 0 if none was played.
+     */
+    private long playTimeoutMove(GameSession game, List<Runnable> afterSync) {
+        // A paused game restarts its clock when the missing player returns
+        if (disconnectPlayers.containsKey(game.getPlayer1()) || disconnectPlayers.containsKey(game.getPlayer2())) {
+            return 0;
+        }
+        int cell = game.pickTimeoutMove(ThreadLocalRandom.current());
+        if (cell < 0) {
+            return 0;
+        }
+        System.out.printf("%s ran out of time in game %s.%n", game.getCurrentPlayer().getUsername(), game.getGameId());
+        return makeMove(game, cell / game.getSize(), cell % game.getSize(), afterSync);
     }
 
+    public void heartbeat(String username) {
+        long start = System.nanoTime();
+        try {
+            failureDetector.heartbeat(username);
+        } finally {
+            metrics.recordCall("heartbeat", start);
+        }
+    }
+
+    /**
+     * Watches the players of every active game in the background.
+     * Quiet clients are probed at an interval that follows their observed
+     * heartbeat rate, and suspected ones go through the disconnect path.
+     */
     public void startHeartbeat(){
-        heartbeatTimer = new Timer();
+        heartbeatTimer = new Timer(true);
         heartbeatTimer.scheduleAtFixedRate(new TimerTask() {
             @Override
             public void run() {
                 for (GameSession game : activeGames.values()){
-                    // Check and handle Player 1
-                    if(!checkClient(game.getPlayer1()) && disconnectPlayers.containsKey(game.getPlayer1())){
-                        try {
-                            handleClientDisconnect(game.getGameId(), game.getPlayer1().getUsername());
-                        } catch (RemoteException e) {
-                            System.err.println("Failed to handle disconnection for: " + game.getPlayer1().getUsername() + ". Error: " + e.getMessage());
-                        }
-                    }
-                    // Check and handle Player 2
-                    if(!checkClient(game.getPlayer2()) && disconnectPlayers.containsKey(game.getPlayer2())){
-                        try {
-                            handleClientDisconnect(game.getGameId(), game.getPlayer2().getUsername());
-                        } catch (RemoteException e) {
-                            System.err.println("Failed to handle disconnection for: " + game.getPlayer2().getUsername() + ". Error: " + e.getMessage());
-                        }
-                    }
+                    watchPlayer(game, game.getPlayer1());
+                    watchPlayer(game, game.getPlayer2());
                 }
             }
-        }, 0, 3000); //send heartbeat every 3 sec
+        }, 0, 500);
+    }
+
+    private void watchPlayer(GameSession game, Player player) {
+        if (disconnectPlayers.containsKey(player)) {
+            return;
+        }
+        if (failureDetector.isSuspected(player.getUsername())) {
+            List<Runnable> afterSync = new ArrayList<>();
+            synchronized (game) {
+                if (isActive(game)) {
+                    handleClientDisconnect(game, player.getUsername(), afterSync);
+                }
+            }
+            completeMove(game, 0, afterSync);
+        } else if (failureDetector.shouldProbe(player.getUsername())) {
+            dispatcher.dispatch(player, c -> c.heartbeat());
+        }
+    }
+
+    public void startMatchmaking() {
+        // Bots play from the perfect-play table, which only covers the classic board
+        if (BOT_WAIT_MILLIS > 0 && BOARD_SIZE == GameSession.CLASSIC_SIZE) {
+            matchmaker.setFallback(BOT_WAIT_MILLIS, this::startBotGame);
+        }
+        matchmaker.start(200);
+    }
+
+    /**
+     * Runs this server as one shard of a cluster. The coordinator pairs players and
+     * keeps their points; this server plays the games it is handed, reports each
+     * result back and refreshes its copy of the ranks every second.
+     *
+     * @param coordinator The router of the cluster.
+     * @param name        A name for this shard that stays the same across restarts.
+     */
+    public void joinCluster(CoordinatorInterface coordinator, String name) throws RemoteException {
+        coordinatorExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "coordinator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rankIndex.replaceCounts(coordinator.getPointCounts());
+        this.coordinator = coordinator;
+        coordinator.registerShard(name, this);
+
+        rankTimer = new Timer("rank-refresh", true);
+        rankTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    rankIndex.replaceCounts(coordinator.getPointCounts());
+                } catch (RemoteException e) {
+                    System.err.println("Failed to refresh ranks from the coordinator: " + e.getMessage());
+                }
+            }
+        }, 1000, 1000);
     }
 
     public static void main(String[] args) {
@@ -468,20 +1474,64 @@ public class TicTacToeServer extends UnicastRemoteObject implements ServerInterf
             return;
         }
 
+        try {
+            GameSession.checkShape(BOARD_SIZE, WIN_LENGTH);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
         try {
             // Set the RMI server's hostname
             System.setProperty("java.rmi.server.hostname", ip);
+            // A client that stops answering must not hold a callback thread for good
+            if (System.getProperty("sun.rmi.transport.tcp.responseTimeout") == null) {
+                System.setProperty("sun.rmi.transport.tcp.responseTimeout", "5000");
+            }
 
             // Create the registry on the given port
             Registry registry = LocateRegistry.createRegistry(port);
 
-            // Create an instance of the TicTacToeServer
-            ServerInterface server = new TicTacToeServer();
-
-            // Bind the remote object to a name in the RMI registry
-            registry.bind("GameServer", server);
+            // Create an instance of the TicTacToeServer and start watching client liveness
+            Path dataDir = Paths.get(System.getProperty("tictactoe.dataDir", "data"));
+            PlayerStore playerStore = PlayerStore.open(dataDir);
+            GameJournal journal = GameJournal.open(dataDir.resolve("journal"));
+            GameArchive archive = GameArchive.open(dataDir.resolve("archive"));
+            TicTacToeServer server = new TicTacToeServer(playerStore, journal, dataDir.resolve("snapshot.dat"), archive);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stopTimers();
+                playerStore.flush();
+                server.flushArchive();
+                try {
+                    archive.close();
+                    journal.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close the game files: " + e.getMessage());
+                }
+            }));
+            server.registerMetrics();
+
+            // A standby only mirrors its primary, and starts serving once the primary is gone
+            String standbyPort = System.getProperty("tictactoe.standbyPort");
+            if (standbyPort != null) {
+                server.startStandby(Integer.parseInt(standbyPort), () -> {
+                    try {
+                        serve(server, registry, ip, port);
+                    } catch (Exception e) {
+                        System.err.println("Failed to take over from the primary: " + e.getMessage());
+                    }
+                });
+                System.out.println("TicTacToe standby is waiting for its primary on port " + standbyPort);
+                return;
+            }
 
-            System.out.println("TicTacToe RMI Server is running on " + ip + ":" + port);
+            String replicateTo = System.getProperty("tictactoe.replicateTo");
+            if (replicateTo != null) {
+                int colon = replicateTo.lastIndexOf(':');
+                server.startReplication(new InetSocketAddress(replicateTo.substring(0, colon),
+                        Integer.parseInt(replicateTo.substring(colon + 1))));
+            }
+            serve(server, registry, ip, port);
         } catch (RemoteException e) {
             System.err.println("Failed to initialize the RMI server: " + e.getMessage());
         } catch (AlreadyBoundException e) {
@@ -490,4 +1540,36 @@ public class TicTacToeServer extends UnicastRemoteObject implements ServerInterf
             System.err.println("An unexpected error occurred: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Starts the background work of a serving server and makes it reachable by clients.
+     */
+    private static void serve(TicTacToeServer server, Registry registry, String ip, int port) throws Exception {
+        server.startHeartbeat();
+        server.startSnapshots(60_000);
+
+        // Bind the remote object to a name in the RMI registry
+        registry.bind("GameServer", server);
+
+        System.out.println("TicTacToe RMI Server is running on " + ip + ":" + port);
+
+        // Behind a router, pairing happens there and this server only plays games
+        String router = System.getProperty("tictactoe.router");
+        if (router != null) {
+            CoordinatorInterface coordinator = (CoordinatorInterface) Naming.lookup("rmi://" + router + "/GameServer");
+            server.joinCluster(coordinator, ip + ":" + port);
+            System.out.println("Joined the cluster routed by " + router);
+        } else {
+            server.startMatchmaking();
+        }
+
+        // Optionally serve the binary protocol too, sharing the same games
+        String nioPort = System.getProperty("tictactoe.nioPort");
+        if (nioPort != null) {
+            NioServer nioServer = NioServer.open(server, new InetSocketAddress(Integer.parseInt(nioPort)),
+                    Math.max(8, Runtime.getRuntime().availableProcessors() * 4));
+            nioServer.start();
+            System.out.println("Binary protocol is served on port " + nioPort);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+// Shaolong Xu 1067946
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary protocol spoken by {@link NioServer} and {@link NioServerConnection}.
+ * Every frame is {@code [int length][byte opcode][payload]}, where the length counts
+ * the opcode and payload. Requests from the client are answered in order with one
+ * reply frame each; events from the server travel on the same connection in between.
+ * Strings are UTF-8 with an unsigned short length, game IDs are two longs and
+ * statuses are a {@link GameStatus.Code} followed by the arguments it needs, and
+ * boards are their size followed by the occupied cells.
+ */
+public final class WireProtocol {
+    public static final int MAX_FRAME = 1 << 20;
+
+    // Requests, client to server. Only REGISTER and RECONNECT carry the username;
+    // the server uses the name bound to the connection for everything else.
+    public static final byte REGISTER = 1;
+    public static final byte RECONNECT = 2;
+    public static final byte MOVE = 3;
+    public static final byte CHAT = 4;
+    public static final byte QUIT = 5;
+    public static final byte DISCONNECT = 6;
+    public static final byte HEARTBEAT = 7;
+    public static final byte REQUEST_SNAPSHOT = 8;
+    public static final byte GET_BOARD = 9;
+
+    // Replies, one per request
+    public static final byte OK = 32;
+    public static final byte ERROR = 33;
+    public static final byte BOARD = 34;
+
+    // Events, server to client, mirroring ClientInterface
+    public static final byte UPDATE = 64;
+    public static final byte FREEZE = 65;
+    public static final byte CHAT_MESSAGE = 66;
+    public static final byte CHAT_HISTORY = 67;
+    public static final byte PING = 68;
+
+    private WireProtocol() {
+    }
+
+    public static boolean isReply(byte opcode) {
+        return opcode >= OK && opcode < UPDATE;
+    }
+
+    /**
+     * Builds one frame, growing its buffer as needed.
+     */
+    public static class FrameWriter {
+        private ByteBuffer buffer = ByteBuffer.allocate(64);
+
+        public FrameWriter(byte opcode) {
+            buffer.putInt(0).put(opcode);
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+
+        public FrameWriter putByte(int value) {
+            ensure(1);
+            buffer.put((byte) value);
+            return this;
+        }
+
+        public FrameWriter putInt(int value) {
+            ensure(4);
+            buffer.putInt(value);
+            return this;
+        }
+
+        public FrameWriter putGameId(GameId id) {
+            // The all-zero ID stands for null, which random UUIDs never are
+            ensure(16);
+            buffer.putLong(id == null ? 0 : id.getMostSigBits());
+            buffer.putLong(id == null ? 0 : id.getLeastSigBits());
+            return this;
+        }
+
+        public FrameWriter putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IllegalArgumentException("String too long for the wire: " + bytes.length + " bytes");
+            }
+            ensure(2 + bytes.length);
+            buffer.putShort((short) bytes.length).put(bytes);
+            return this;
+        }
+
+        /**
+         * Writes a board in the form {@link Board} defines: its size, then only the occupied cells.
+         */
+        public FrameWriter putBoard(Board board) {
+            ensure(board.encodedSize());
+            board.write(buffer);
+            return this;
+        }
+
+        /**
+         * Writes an update in the form {@link GameUpdate} defines, the one it also uses over RMI.
+         */
+        public FrameWriter putUpdate(GameUpdate update) {
+            ensure(update.encodedSize());
+            update.write(buffer);
+            return this;
+        }
+
+        /**
+         * @return The finished frame, ready to be written.
+         */
+        public ByteBuffer finish() {
+            buffer.putInt(0, buffer.position() - 4);
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    public static GameId getGameId(ByteBuffer buffer) {
+        long most = buffer.getLong();
+        long least = buffer.getLong();
+        return most == 0 && least == 0 ? null : GameId.of(most, least);
+    }
+
+    public static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static Board getBoard(ByteBuffer buffer) {
+        return Board.read(buffer);
+    }
+
+    public static GameUpdate getUpdate(ByteBuffer buffer) {
+        return GameUpdate.read(buffer);
+    }
+
+    public static List<String> getStrings(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / 2) {
+            throw new BufferUnderflowException();
+        }
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(getString(buffer));
+        }
+        return strings;
+    }
+}
@@ -0,0 +1,129 @@
+// Shaolong Xu 1067946
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameArchiveTest {
+
+    // X wins on the top row; O wins on the middle column; a full board drawn
+    private static final short[] X_TOP_ROW = {0, 3, 1, 4, 2};
+    private static final short[] O_MIDDLE = {0, 1, 3, 4, 8, 7};
+    private static final short[] DRAWN = {0, 1, 2, 4, 3, 5, 7, 6, 8};
+
+    @TempDir
+    Path directory;
+
+    private Path segment() {
+        return directory.resolve("games-000000.dat");
+    }
+
+    private static List<Integer> moves(GameArchive.ArchivedGame game) {
+        List<Integer> moves = new ArrayList<>();
+        for (int move = 0; move < game.getMoveCount(); move++) {
+            moves.add(game.getMove(move));
+        }
+        return moves;
+    }
+
+    private static List<Integer> moves(short[] cells) {
+        List<Integer> moves = new ArrayList<>();
+        for (short cell : cells) {
+            moves.add((int) cell);
+        }
+        return moves;
+    }
+
+    @Test
+    void findsEachPlayersGames() throws IOException {
+        try (GameArchive archive = GameArchive.open(directory)) {
+            archive.append(1, 2, X_TOP_ROW, GameArchive.PLAYER1_WON);
+            archive.append(3, 1, O_MIDDLE, GameArchive.PLAYER2_WON);
+            archive.append(2, 3, DRAWN, GameArchive.DRAW);
+
+            assertEquals(3, archive.size());
+            List<GameArchive.ArchivedGame> games = archive.findGames(1);
+            assertEquals(2, games.size());
+            assertEquals(moves(X_TOP_ROW), moves(games.get(0)));
+            assertEquals(GameArchive.PLAYER1_WON, games.get(0).getOutcome());
+            assertEquals(3, games.get(1).getPlayer1Id());
+            assertEquals(moves(O_MIDDLE), moves(games.get(1)));
+
+            assertEquals(GameArchive.DRAW, archive.findGames(3).get(1).getOutcome());
+            assertTrue(archive.findGames(99).isEmpty());
+        }
+    }
+
+    @Test
+    void readerStreamsGamesAfterReopening() throws IOException {
+        try (GameArchive archive = GameArchive.open(directory)) {
+            archive.append(1, 2, X_TOP_ROW, GameArchive.PLAYER1_WON);
+            archive.append(2, 1, DRAWN, GameArchive.DRAW);
+        }
+
+        try (GameArchive archive = GameArchive.open(directory)) {
+            assertEquals(2, archive.size());
+            assertEquals(2, archive.findGames(2).size());
+            try (GameArchive.Reader reader = archive.openReader()) {
+                GameArchive.ArchivedGame first = reader.next();
+                GameArchive.ArchivedGame second = reader.next();
+                assertNull(reader.next());
+
+                assertEquals(moves(X_TOP_ROW), moves(first));
+                assertEquals(moves(DRAWN), moves(second));
+                assertEquals(2, second.getPlayer1Id());
+                assertArrayEquals(new char[]{'X', 'X', 'X'}, first.getBoard(5)[0]);
+                assertArrayEquals(new char[]{'O', 'O', ' '}, first.getBoard(5)[1]);
+            }
+        }
+    }
+
+    @Test
+    void dropsTornRecordAtEnd() throws IOException {
+        try (GameArchive archive = GameArchive.open(directory)) {
+            archive.append(1, 2, X_TOP_ROW, GameArchive.PLAYER1_WON);
+        }
+        // The first bytes of a five-move game
+        Files.write(segment(), new byte[]{0x51, 0, 0, 0}, StandardOpenOption.APPEND);
+
+        try (GameArchive archive = GameArchive.open(directory)) {
+            assertEquals(1, archive.size());
+            archive.append(2, 1, O_MIDDLE, GameArchive.PLAYER2_WON);
+            assertEquals(moves(O_MIDDLE), moves(archive.findGames(1).get(1)));
+        }
+    }
+
+    @Test
+    void recreatesSegmentWithTornHeader() throws IOException {
+        Files.createDirectories(directory);
+        Files.write(segment(), new byte[]{0x54, 0x54});
+
+        try (GameArchive archive = GameArchive.open(directory)) {
+            assertEquals(0, archive.size());
+            archive.append(1, 2, X_TOP_ROW, GameArchive.PLAYER1_WON);
+        }
+        try (GameArchive archive = GameArchive.open(directory)) {
+            assertEquals(1, archive.findGames(2).size());
+        }
+    }
+
+    @Test
+    void recreatesEmptySegment() throws IOException {
+        Files.createDirectories(directory);
+        Files.createFile(segment());
+
+        try (GameArchive archive = GameArchive.open(directory)) {
+            assertEquals(0, archive.size());
+            archive.append(1, 2, DRAWN, GameArchive.DRAW);
+            assertEquals(1, archive.findGames(1).size());
+        }
+    }
+}
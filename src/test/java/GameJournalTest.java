@@ -0,0 +1,134 @@
+// Shaolong Xu 1067946
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameJournalTest {
+
+    private static final UUID GAME = new UUID(1, 2);
+
+    @TempDir
+    Path directory;
+
+    // Writes each record as a line, so tests can compare what was replayed
+    private static class Recorder implements GameJournal.Listener {
+        final List<String> records = new ArrayList<>();
+
+        public void onCreate(long time, UUID gameId, String player1, String player2, char player1Symbol,
+                             int size, int winLength) {
+            records.add("create " + player1 + " " + player2 + " " + player1Symbol + " " + size + " " + winLength);
+        }
+        public void onMove(long time, UUID gameId, int seq, int row, int col, char symbol) {
+            records.add("move " + seq + " " + row + " " + col + " " + symbol);
+        }
+        public void onChat(long time, UUID gameId, int index, String message) {
+            records.add("chat " + index + " " + message);
+        }
+        public void onDisconnect(long time, UUID gameId, String username) {
+            records.add("disconnect " + username);
+        }
+        public void onReconnect(long time, UUID gameId, String username) {
+            records.add("reconnect " + username);
+        }
+        public void onOutcome(long time, UUID gameId, String outcome) {
+            records.add("outcome " + outcome);
+        }
+    }
+
+    private List<String> replay(long fromSegment) throws IOException {
+        Recorder recorder = new Recorder();
+        try (GameJournal journal = GameJournal.open(directory)) {
+            journal.replay(fromSegment, recorder);
+        }
+        return recorder.records;
+    }
+
+    @Test
+    void replaysRecordsInOrder() throws IOException {
+        try (GameJournal journal = GameJournal.open(directory)) {
+            journal.appendCreate(GAME, "alice", "bob", 'X', 15, 5);
+            journal.appendMove(GAME, 1, 7, 7, 'X');
+            journal.appendChat(GAME, 0, "hi");
+            journal.appendDisconnect(GAME, "bob");
+            long lsn = journal.appendReconnect(GAME, "bob");
+            journal.awaitDurable(lsn);
+        }
+
+        assertEquals(List.of("create alice bob X 15 5", "move 1 7 7 X", "chat 0 hi",
+                "disconnect bob", "reconnect bob"), replay(0));
+    }
+
+    @Test
+    void finalMoveIsAppendedWithItsOutcome() throws IOException {
+        try (GameJournal journal = GameJournal.open(directory)) {
+            long before = journal.appendMove(GAME, 1, 0, 0, 'X');
+            long lsn = journal.appendMove(GAME, 2, 1, 1, 'O', "bob won");
+            assertEquals(before + 2, lsn);
+            journal.awaitDurable(lsn);
+        }
+
+        assertEquals(List.of("move 1 0 0 X", "move 2 1 1 O", "outcome bob won"), replay(0));
+    }
+
+    @Test
+    void rotationSplitsSegments() throws IOException {
+        try (GameJournal journal = GameJournal.open(directory)) {
+            journal.appendMove(GAME, 1, 0, 0, 'X');
+            assertEquals(1, journal.rotate());
+            // The new segment is there before anything older can be deleted
+            assertTrue(Files.exists(directory.resolve("journal-0000000001.log")));
+            journal.awaitDurable(journal.appendMove(GAME, 2, 0, 1, 'O'));
+        }
+
+        assertEquals(List.of("move 1 0 0 X", "move 2 0 1 O"), replay(0));
+        assertEquals(List.of("move 2 0 1 O"), replay(1));
+
+        try (GameJournal journal = GameJournal.open(directory)) {
+            journal.deleteSegmentsBefore(1);
+            // Appends after reopening go to the newest segment
+            journal.awaitDurable(journal.appendMove(GAME, 3, 0, 2, 'X'));
+        }
+        assertEquals(List.of("move 2 0 1 O", "move 3 0 2 X"), replay(0));
+    }
+
+    @Test
+    void dropsTornRecordAtEnd() throws IOException {
+        try (GameJournal journal = GameJournal.open(directory)) {
+            journal.awaitDurable(journal.appendMove(GAME, 1, 0, 0, 'X'));
+        }
+        // Half of a record, as left by a crash in the middle of a write
+        Path segment = directory.resolve("journal-0000000000.log");
+        Files.write(segment, new byte[]{0, 0, 0, 40, 2, 0, 0}, StandardOpenOption.APPEND);
+
+        try (GameJournal journal = GameJournal.open(directory)) {
+            journal.awaitDurable(journal.appendMove(GAME, 2, 0, 1, 'O'));
+        }
+        assertEquals(List.of("move 1 0 0 X", "move 2 0 1 O"), replay(0));
+    }
+
+    @Test
+    void decodesTappedRecords() throws IOException {
+        List<byte[]> tapped = new ArrayList<>();
+        try (GameJournal journal = GameJournal.open(directory)) {
+            journal.setTap(tapped::add);
+            journal.appendCreate(GAME, "alice", "bob", 'O', 3, 3);
+            journal.appendOutcome(GAME, "draw");
+        }
+
+        Recorder recorder = new Recorder();
+        for (byte[] record : tapped) {
+            GameJournal.decode(record, recorder);
+        }
+        assertEquals(List.of("create alice bob O 3 3", "outcome draw"), recorder.records);
+    }
+}
@@ -0,0 +1,108 @@
+// Shaolong Xu 1067946
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PerfectPlayTest {
+
+    private static final int FULL = 0x1FF;
+
+    private static boolean isOver(int xMask, int oMask) {
+        return GameSession.hasLine(xMask) || GameSession.hasLine(oMask) || (xMask | oMask) == FULL;
+    }
+
+    @Test
+    void tableHoldsEveryReachablePosition() {
+        Set<Integer> positions = new HashSet<>();
+        collect(0, 0, positions);
+        assertEquals(5478, positions.size());
+        assertEquals(5478, PerfectPlay.getPositionCount());
+    }
+
+    // Walks every game from the position, X moving first, keying positions by both masks
+    private static void collect(int xMask, int oMask, Set<Integer> positions) {
+        if (!positions.add(xMask << 9 | oMask) || isOver(xMask, oMask)) {
+            return;
+        }
+        boolean xToMove = Integer.bitCount(xMask) == Integer.bitCount(oMask);
+        for (int cell = 0; cell < 9; cell++) {
+            int bit = 1 << cell;
+            if (((xMask | oMask) & bit) == 0) {
+                collect(xToMove ? xMask | bit : xMask, xToMove ? oMask : oMask | bit, positions);
+            }
+        }
+    }
+
+    @Test
+    void emptyBoardIsADraw() {
+        assertEquals(PerfectPlay.DRAW, PerfectPlay.value(0, 0));
+        int[] moves = new int[9];
+        int xMask = 0, oMask = 0;
+        for (int move = 0; move < 9; move++) {
+            moves[move] = PerfectPlay.bestMove(xMask, oMask);
+            if (move % 2 == 0) {
+                xMask |= 1 << moves[move];
+            } else {
+                oMask |= 1 << moves[move];
+            }
+            assertFalse(GameSession.hasLine(xMask) || GameSession.hasLine(oMask));
+        }
+        assertEquals(FULL, xMask | oMask);
+        assertEquals(-1, PerfectPlay.bestMove(xMask, oMask));
+    }
+
+    @Test
+    void takesAnImmediateWin() {
+        // X holds 0 and 1, O holds 3 and 4; X to move wins at 2
+        assertEquals(2, PerfectPlay.bestMove(0b000000011, 0b000011000));
+        assertEquals(PerfectPlay.WIN, PerfectPlay.value(0b000000011, 0b000011000));
+        // O to move after X's win has lost
+        assertEquals(-1, PerfectPlay.bestMove(0b000000111, 0b000011000));
+        assertEquals(PerfectPlay.LOSS, PerfectPlay.value(0b000000111, 0b000011000));
+    }
+
+    @Test
+    void rejectsUnreachablePositions() {
+        assertThrows(IllegalArgumentException.class, () -> PerfectPlay.value(0b11, 0));
+        assertEquals(-1, PerfectPlay.bestMove(0b11, 0));
+    }
+
+    @Test
+    void neverLosesAsEitherSide() {
+        assertFalse(canBeatBot(0, 0, true));
+        assertFalse(canBeatBot(0, 0, false));
+    }
+
+    // Tries every reply of the bot's opponent and checks the bot's moves keep the table's value
+    private static boolean canBeatBot(int xMask, int oMask, boolean botIsX) {
+        if (GameSession.hasLine(botIsX ? oMask : xMask)) {
+            return true;
+        }
+        if (isOver(xMask, oMask)) {
+            return false;
+        }
+        boolean xToMove = Integer.bitCount(xMask) == Integer.bitCount(oMask);
+        if (xToMove == botIsX) {
+            int cell = PerfectPlay.bestMove(xMask, oMask);
+            int bit = 1 << cell;
+            assertEquals(0, (xMask | oMask) & bit);
+            int nextX = xToMove ? xMask | bit : xMask;
+            int nextO = xToMove ? oMask : oMask | bit;
+            // The best move leaves the opponent with the negated value
+            assertEquals(-PerfectPlay.value(xMask, oMask), PerfectPlay.value(nextX, nextO));
+            return canBeatBot(nextX, nextO, botIsX);
+        }
+        for (int cell = 0; cell < 9; cell++) {
+            int bit = 1 << cell;
+            if (((xMask | oMask) & bit) == 0
+                    && canBeatBot(xToMove ? xMask | bit : xMask, xToMove ? oMask : oMask | bit, botIsX)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
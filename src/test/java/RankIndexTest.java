@@ -0,0 +1,99 @@
+// Shaolong Xu 1067946
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RankIndexTest {
+
+    @Test
+    void equalPointsShareRank() {
+        RankIndex index = new RankIndex();
+        index.add(10);
+        index.add(5);
+        index.add(5);
+        index.add(0);
+
+        assertEquals(4, index.size());
+        assertEquals(1, index.rankOf(10));
+        assertEquals(2, index.rankOf(5));
+        assertEquals(4, index.rankOf(0));
+    }
+
+    @Test
+    void moveAndRemoveUpdateRanks() {
+        RankIndex index = new RankIndex();
+        index.add(3);
+        index.add(3);
+        index.move(3, 8);
+
+        assertEquals(1, index.rankOf(8));
+        assertEquals(2, index.rankOf(3));
+
+        index.remove(8);
+        assertEquals(1, index.size());
+        assertEquals(1, index.rankOf(3));
+    }
+
+    @Test
+    void growsPastInitialCapacity() {
+        RankIndex index = new RankIndex();
+        index.add(1);
+        index.add(5000);
+        index.move(1, 1500);
+
+        assertEquals(1, index.rankOf(5000));
+        assertEquals(2, index.rankOf(1500));
+        assertEquals(1, index.rankOf(100_000)); // Above every score
+    }
+
+    @Test
+    void replaceCountsRebuildsTree() {
+        RankIndex index = new RankIndex();
+        index.add(1);
+        int[] counts = new int[3000];
+        counts[0] = 2;
+        counts[7] = 1;
+        counts[2999] = 3;
+        index.replaceCounts(counts);
+
+        assertEquals(6, index.size());
+        assertEquals(1, index.rankOf(2999));
+        assertEquals(4, index.rankOf(7));
+        assertEquals(5, index.rankOf(0));
+        assertArrayEquals(counts, Arrays.copyOf(index.getCounts(), counts.length));
+    }
+
+    @Test
+    void matchesSortedScores() {
+        Random random = new Random(42);
+        RankIndex index = new RankIndex();
+        List<Integer> scores = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            int points = random.nextInt(3000);
+            index.add(points);
+            scores.add(points);
+        }
+        for (int i = 0; i < 2000; i++) {
+            int player = random.nextInt(scores.size());
+            int to = random.nextInt(3000);
+            index.move(scores.get(player), to);
+            scores.set(player, to);
+        }
+
+        for (int points : scores) {
+            int above = 0;
+            for (int other : scores) {
+                if (other > points) {
+                    above++;
+                }
+            }
+            assertEquals(1 + above, index.rankOf(points));
+        }
+    }
+}
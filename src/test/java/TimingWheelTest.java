@@ -0,0 +1,79 @@
+// Shaolong Xu 1067946
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    // 4 buckets of 10 ms, so one turn of the wheel is 40 ms
+    private final TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, 4);
+
+    @AfterEach
+    void stopWheel() {
+        wheel.stop();
+    }
+
+    @Test
+    void runsTaskAfterDelay() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+        long start = System.nanoTime();
+        wheel.schedule(timeout -> ran.countDown(), 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(ran.await(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    void waitsOutRoundsBeyondOneTurn() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+        long start = System.nanoTime();
+        // Lands in the same bucket as a 20 ms task, three turns later
+        wheel.schedule(timeout -> ran.countDown(), 140, TimeUnit.MILLISECONDS);
+
+        assertTrue(ran.await(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(140));
+    }
+
+    @Test
+    void cancelledTaskNeverRuns() throws InterruptedException {
+        AtomicBoolean ran = new AtomicBoolean();
+        TimingWheel.Timeout timeout = wheel.schedule(t -> ran.set(true), 30, TimeUnit.MILLISECONDS);
+
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertFalse(timeout.cancel());
+
+        // A later task in the same bucket proves the wheel has passed the cancelled one
+        CountDownLatch later = new CountDownLatch(1);
+        wheel.schedule(t -> later.countDown(), 70, TimeUnit.MILLISECONDS);
+        assertTrue(later.await(1, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void cancelAfterRunFails() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+        TimingWheel.Timeout timeout = wheel.schedule(t -> ran.countDown(), 10, TimeUnit.MILLISECONDS);
+
+        assertTrue(ran.await(1, TimeUnit.SECONDS));
+        assertFalse(timeout.cancel());
+        assertFalse(timeout.isCancelled());
+        assertEquals(0, timeout.getDelay(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void stoppedWheelRunsNothing() throws InterruptedException {
+        AtomicBoolean ran = new AtomicBoolean();
+        wheel.schedule(t -> ran.set(true), 20, TimeUnit.MILLISECONDS);
+
+        wheel.stop();
+        Thread.sleep(60);
+        assertFalse(ran.get());
+    }
+}
@@ -0,0 +1,153 @@
+// Shaolong Xu 1067946
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WireProtocolTest {
+
+    private static final GameId GAME = GameId.of(7, 9);
+
+    // Sends a value through Java serialization, as RMI does
+    @SuppressWarnings("unchecked")
+    private static <T> T serialize(T value) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (T) in.readObject();
+        }
+    }
+
+    // Writes a frame and positions a buffer at its payload, as NioServerConnection reads it
+    private static ByteBuffer payload(WireProtocol.FrameWriter writer, byte opcode) {
+        ByteBuffer frame = writer.finish();
+        assertEquals(frame.remaining() - 4, frame.getInt());
+        assertEquals(opcode, frame.get());
+        return frame;
+    }
+
+    private static GameUpdate wire(GameUpdate update) {
+        ByteBuffer frame = payload(new WireProtocol.FrameWriter(WireProtocol.UPDATE).putUpdate(update), WireProtocol.UPDATE);
+        GameUpdate read = WireProtocol.getUpdate(frame);
+        assertFalse(frame.hasRemaining());
+        return read;
+    }
+
+    private static void assertSameUpdate(GameUpdate expected, GameUpdate actual) {
+        assertEquals(expected.getGameId(), actual.getGameId());
+        assertEquals(expected.getSeq(), actual.getSeq());
+        assertEquals(expected.isSnapshot(), actual.isSnapshot());
+        if (expected.isSnapshot()) {
+            assertArrayEquals(expected.getBoard(), actual.getBoard());
+        }
+        assertEquals(expected.hasMove(), actual.hasMove());
+        assertEquals(expected.getRow(), actual.getRow());
+        assertEquals(expected.getCol(), actual.getCol());
+        assertEquals(expected.getSymbol(), actual.getSymbol());
+        assertEquals(expected.isYourTurn(), actual.isYourTurn());
+        assertEquals(expected.isGameOver(), actual.isGameOver());
+        assertEquals(expected.getTurnMillis(), actual.getTurnMillis());
+        if (expected.getStatus() == null) {
+            assertNull(actual.getStatus());
+        } else {
+            assertEquals(expected.getStatus().render(), actual.getStatus().render());
+        }
+    }
+
+    private static char[][] sparseBoard() {
+        char[][] board = new char[15][15];
+        board[0][0] = 'X';
+        board[7][7] = 'O';
+        board[14][13] = 'X';
+        return board;
+    }
+
+    private static List<GameUpdate> updates() {
+        return List.of(
+                GameUpdate.status(null, 0, false, GameStatus.FINDING_PLAYERS, false),
+                GameUpdate.status(GAME, 0, true, GameStatus.of(GameStatus.Code.GAME_STARTED, "Zoë", 3, 'X'), false),
+                GameUpdate.move(GAME, 4, 2, 1, 'O', true, GameStatus.of(GameStatus.Code.TURN, "bob", 12, 'X'), false)
+                        .withTurnMillis(19_500),
+                GameUpdate.move(GAME, 5, 126, 0, 'X', false, GameStatus.of(GameStatus.Code.WIN, "alice", 0, '\0'), true),
+                GameUpdate.snapshot(GAME, 3, new Board(sparseBoard()), false, null).withTurnMillis(1),
+                GameUpdate.snapshot(GAME, 0, new Board(new char[3][3]), true, GameStatus.MATCH_DRAWN));
+    }
+
+    @Test
+    void updatesRoundTripOverTheWire() {
+        for (GameUpdate update : updates()) {
+            assertSameUpdate(update, wire(update));
+        }
+    }
+
+    @Test
+    void updatesRoundTripOverRmi() throws Exception {
+        for (GameUpdate update : updates()) {
+            assertSameUpdate(update, serialize(update));
+        }
+    }
+
+    @Test
+    void moveUpdateIsCompact() {
+        GameUpdate update = GameUpdate.move(GAME, 4, 2, 1, 'O', true, GameStatus.DRAW, true);
+        // Flags, game ID, sequence number, move and status code
+        assertEquals(1 + 16 + 4 + 3 + 1, update.encodedSize());
+    }
+
+    @Test
+    void boardsKeepOnlyOccupiedCells() throws Exception {
+        char[][] board = sparseBoard();
+        assertEquals(4 + 3 * 3, new Board(board).encodedSize());
+
+        ByteBuffer frame = payload(new WireProtocol.FrameWriter(WireProtocol.BOARD).putBoard(new Board(board)),
+                WireProtocol.BOARD);
+        assertArrayEquals(board, WireProtocol.getBoard(frame).getCells());
+        assertArrayEquals(board, serialize(new Board(board)).getCells());
+    }
+
+    @Test
+    void gameBoardsEncodeFromTheirMoves() throws Exception {
+        GameSession game = new GameSession(new UUID(1, 1), null, null, 15, 5);
+        game.makeMove(7, 7, 'X');
+        game.makeMove(0, 14, 'O');
+        game.makeMove(14, 0, 'X');
+        char[][] expected = new char[15][15];
+        expected[7][7] = 'X';
+        expected[0][14] = 'O';
+        expected[14][0] = 'X';
+
+        Board board = game.getBoard();
+        assertEquals(4 + 3 * 3, board.encodedSize());
+        assertArrayEquals(expected, serialize(board).getCells());
+        GameUpdate update = wire(GameUpdate.snapshot(GAME, 3, board, true, null));
+        assertArrayEquals(expected, update.getBoard());
+        assertArrayEquals(expected, board.getCells());
+    }
+
+    @Test
+    void malformedRmiUpdateFails() throws Exception {
+        GameUpdate update = GameUpdate.status(GAME, 1, false, GameStatus.of(GameStatus.Code.TURN, "bob", 1, 'O'), false);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(update);
+        }
+        byte[] stream = bytes.toByteArray();
+        // The status code is the byte after the flags, game ID and sequence number
+        int flagsAt = stream.length - update.encodedSize() - 1; // The block ends with an end marker
+        stream[flagsAt + 21] = 100;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(stream))) {
+            assertThrows(IOException.class, in::readObject);
+        }
+    }
+}